@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.fortsoft.ff2j.converter.BooleanConverter;
+import ro.fortsoft.ff2j.converter.ByteConverter;
+import ro.fortsoft.ff2j.converter.DateConverter;
+import ro.fortsoft.ff2j.converter.DoubleConverter;
+import ro.fortsoft.ff2j.converter.FloatConverter;
+import ro.fortsoft.ff2j.converter.IntegerConverter;
+import ro.fortsoft.ff2j.converter.LongConverter;
+import ro.fortsoft.ff2j.converter.ShortConverter;
+import ro.fortsoft.ff2j.demo.MyDateConverter;
+
+/**
+ * Measures each built-in converter. The converters that implement a primitive interface 
+ * (for example {@link ro.fortsoft.ff2j.converter.ToIntConverter}) are measured twice: decoding 
+ * a substring to a wrapper and decoding the range of a line to a primitive (as FF2J does for 
+ * the fields of these types).
+ * 
+ * @author Decebal Suiu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterBenchmark {
+
+	// the fields are not final, so the JIT cannot fold the conversions
+	private String line = "[webapp 2013/06/13 17:21:40] - 48213, -1234567890123, 0.125, true, 3.5, 120, -7";
+	private String date = "2013/06/13 17:21:40";
+	private String shortDate = "13/06/2013";
+	private String intText = "48213";
+	private String longText = "-1234567890123";
+	private String doubleText = "0.125";
+	private String booleanText = "true";
+	private String floatText = "3.5";
+	private String shortText = "120";
+	private String byteText = "-7";
+	
+	/** The start of the values in the line */
+	private int intStart;
+	private int longStart;
+	private int doubleStart;
+	private int booleanStart;
+	
+	private BooleanConverter booleanConverter = new BooleanConverter();
+	private ByteConverter byteConverter = new ByteConverter();
+	private ShortConverter shortConverter = new ShortConverter();
+	private IntegerConverter integerConverter = new IntegerConverter();
+	private LongConverter longConverter = new LongConverter();
+	private FloatConverter floatConverter = new FloatConverter();
+	private DoubleConverter doubleConverter = new DoubleConverter();
+	private DateConverter dateConverter = new DateConverter();
+	private MyDateConverter logDateConverter = new MyDateConverter();
+	
+	@Setup
+	public void setUp() {
+		intStart = line.indexOf(intText);
+		longStart = line.indexOf(longText);
+		doubleStart = line.indexOf(doubleText);
+		booleanStart = line.indexOf(booleanText);
+	}
+	
+	@Benchmark
+	public Object booleanDecode() {
+		return booleanConverter.decode(booleanText);
+	}
+	
+	@Benchmark
+	public boolean booleanDecodePrimitive() {
+		return booleanConverter.decodeBoolean(line, booleanStart, booleanStart + booleanText.length());
+	}
+	
+	@Benchmark
+	public Object byteDecode() {
+		return byteConverter.decode(byteText);
+	}
+	
+	@Benchmark
+	public Object shortDecode() {
+		return shortConverter.decode(shortText);
+	}
+	
+	@Benchmark
+	public Object integerDecode() {
+		return integerConverter.decode(intText);
+	}
+	
+	@Benchmark
+	public int integerDecodePrimitive() {
+		return integerConverter.decodeInt(line, intStart, intStart + intText.length());
+	}
+	
+	@Benchmark
+	public Object longDecode() {
+		return longConverter.decode(longText);
+	}
+	
+	@Benchmark
+	public long longDecodePrimitive() {
+		return longConverter.decodeLong(line, longStart, longStart + longText.length());
+	}
+	
+	@Benchmark
+	public Object floatDecode() {
+		return floatConverter.decode(floatText);
+	}
+	
+	@Benchmark
+	public Object doubleDecode() {
+		return doubleConverter.decode(doubleText);
+	}
+	
+	@Benchmark
+	public double doubleDecodePrimitive() {
+		return doubleConverter.decodeDouble(line, doubleStart, doubleStart + doubleText.length());
+	}
+	
+	@Benchmark
+	public Object dateDecode() {
+		return dateConverter.decode(shortDate);
+	}
+	
+	/**
+	 * The date of the demo's log, with a custom pattern.
+	 */
+	@Benchmark
+	public Object logDateDecode() {
+		return logDateConverter.decode(date);
+	}
+	
+}
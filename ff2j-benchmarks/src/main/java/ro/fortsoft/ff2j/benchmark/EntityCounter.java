@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ro.fortsoft.ff2j.demo.AbstractEntityHandler;
+import ro.fortsoft.ff2j.demo.Download;
+
+/**
+ * A handler that counts the entities, so the benchmarks measure FF2J and not the handler.
+ * FF2J finds the entity type of a handler from its generic superclass, so there is a subclass 
+ * for each entity type.
+ * 
+ * @author Decebal Suiu
+ */
+public abstract class EntityCounter<T> extends AbstractEntityHandler<T> {
+
+	private long count;
+	
+	/**
+	 * Returns a counter for each of the first entity types of {@link LogGenerator}.
+	 */
+	public static List<EntityCounter<?>> create(int entityTypes) {
+		List<EntityCounter<?>> counters = new ArrayList<EntityCounter<?>>();
+		counters.add(new DownloadCounter());
+		counters.add(new UploadCounter());
+		counters.add(new ViewCounter());
+		counters.add(new DeletionCounter());
+		
+		return counters.subList(0, entityTypes);
+	}
+	
+	@Override
+	public void handleEntity(T entity) {
+		count++;
+	}
+	
+	public long getCount() {
+		return count;
+	}
+	
+	public static class DownloadCounter extends EntityCounter<Download> {
+	}
+
+	public static class UploadCounter extends EntityCounter<Upload> {
+	}
+
+	public static class ViewCounter extends EntityCounter<View> {
+	}
+
+	public static class DeletionCounter extends EntityCounter<Deletion> {
+	}
+	
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.benchmark;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.fortsoft.ff2j.BatchEntityHandler;
+import ro.fortsoft.ff2j.FF2J;
+import ro.fortsoft.ff2j.UnorderedEntityHandler;
+import ro.fortsoft.ff2j.demo.Download;
+
+/**
+ * Measures the delivery of an entity to its handlers: the handlers lookup, the statistics and 
+ * the calls (or the batching). Lines that all map to an entity are parsed from memory with 
+ * {@link FF2J#parse(java.io.Reader)}, so the score includes the mapping; the delivery is 
+ * the difference with the score for {@code handlers = 0}.
+ * 
+ * @author Decebal Suiu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerDispatchBenchmark {
+
+	private static final int LINES = 10000;
+	
+	@Param({ "ordered", "unordered", "batch" })
+	public String handlerType;
+	
+	@Param({ "0", "1", "4" })
+	public int handlers;
+	
+	private FF2J ff2j;
+	private String text;
+	
+	@Setup
+	public void setUp() {
+		ff2j = new FF2J().map(Download.class);
+		for (int i = 0; i < handlers; i++) {
+			if ("ordered".equals(handlerType)) {
+				ff2j.addEntityHandler(new EntityCounter.DownloadCounter());
+			} else if ("unordered".equals(handlerType)) {
+				ff2j.addEntityHandler(new UnorderedDownloadCounter());
+			} else if ("batch".equals(handlerType)) {
+				ff2j.addEntityHandler(new BatchDownloadCounter());
+			} else {
+				throw new IllegalArgumentException("Unknown handler type " + handlerType);
+			}
+		}
+		
+		List<String> lines = new LogGenerator()
+			.setHitRatio(1)
+			.setEntityTypes(1)
+			.generate(LINES);
+		text = String.join("\n", lines);
+	}
+	
+	/**
+	 * The time is per entity.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public FF2J.Statistics handleEntity() {
+		FF2J.Statistics statistics = ff2j.parse(new StringReader(text));
+		if (ff2j.getError() != null) {
+			throw new IllegalStateException(ff2j.getError());
+		}
+		
+		return statistics;
+	}
+	
+	public static class UnorderedDownloadCounter extends EntityCounter<Download> implements UnorderedEntityHandler<Download> {
+		
+		private LongAdder count = new LongAdder();
+		
+		@Override
+		public void handleEntity(Download entity) {
+			count.increment();
+		}
+		
+		@Override
+		public long getCount() {
+			return count.sum();
+		}
+		
+	}
+	
+	public static class BatchDownloadCounter extends EntityCounter<Download> implements BatchEntityHandler<Download> {
+
+		@Override
+		public void handleEntities(List<Download> entities) {
+			for (Download entity : entities) {
+				handleEntity(entity);
+			}
+		}
+		
+	}
+	
+}
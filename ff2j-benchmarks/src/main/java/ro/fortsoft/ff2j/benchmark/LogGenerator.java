@@ -0,0 +1,255 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import ro.fortsoft.ff2j.demo.Download;
+
+/**
+ * Generates a webapp log like the demo's log, for the benchmarks. The same seed and settings 
+ * always generate the same lines.
+ * <p>
+ * A line is an entity line (a hit), a malformed line or a noise line. A malformed line starts like 
+ * an entity line (so it contains the literals of the pattern) but has no ip, so the regex fails 
+ * late; a noise line is a server line that matches no entity. The entity lines are spread evenly 
+ * over the entity types ({@link Download}, {@link Upload}, {@link View}, {@link Deletion}).
+ * The lines are padded with a hash up to the line length.
+ * 
+ * @author Decebal Suiu
+ */
+public class LogGenerator {
+
+	private static final Class<?>[] ENTITY_CLASSES = { Download.class, Upload.class, View.class, Deletion.class };
+	
+	/**
+	 * The max number of entity types.
+	 */
+	public static final int MAX_ENTITY_TYPES = ENTITY_CLASSES.length;
+	
+	private static final String[] FILES = {
+		"nextreports-setup-6.1.exe",
+		"nextreports-setup-6.1-jre.exe",
+		"engine/nextreports-integration-demo-6.1.zip",
+		"nextreports-server-setup-6.1.tar.gz"
+	};
+	
+	private static final String[] MESSAGES = {
+		"HTTP Listener started: port=8778",
+		"AJP13 Listener started: port=8009",
+		"Request handler pool: idle threads=12",
+		"Session expired: id=0c4d2b9a"
+	};
+	
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	private long seed;
+	private double hitRatio;
+	private int lineLength;
+	private int entityTypes;
+	private double malformedRate;
+	
+	public LogGenerator() {
+		seed = 1;
+		hitRatio = 0.7;
+		lineLength = 120;
+		entityTypes = 1;
+	}
+	
+	/**
+	 * Returns the entity classes of the first entity types.
+	 */
+	public static List<Class<?>> getEntityClasses(int entityTypes) {
+		return Arrays.asList(ENTITY_CLASSES).subList(0, entityTypes);
+	}
+	
+	public LogGenerator setSeed(long seed) {
+		this.seed = seed;
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the fraction of lines mapped to an entity. The default value is 0.7.
+	 * 
+	 * @param hitRatio
+	 * @return
+	 */
+	public LogGenerator setHitRatio(double hitRatio) {
+		if ((hitRatio < 0) || (hitRatio > 1)) {
+			throw new IllegalArgumentException("Hit ratio must be between 0 and 1");
+		}
+		this.hitRatio = hitRatio;
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the min length of a line. The default value is 120, a line is not shorter than its fields. 
+	 * 
+	 * @param lineLength
+	 * @return
+	 */
+	public LogGenerator setLineLength(int lineLength) {
+		if (lineLength < 0) {
+			throw new IllegalArgumentException("Line length cannot be negative");
+		}
+		this.lineLength = lineLength;
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the number of entity types, between 1 and {@link #MAX_ENTITY_TYPES}. The default value is 1.
+	 * 
+	 * @param entityTypes
+	 * @return
+	 */
+	public LogGenerator setEntityTypes(int entityTypes) {
+		if ((entityTypes < 1) || (entityTypes > MAX_ENTITY_TYPES)) {
+			throw new IllegalArgumentException("Entity types must be between 1 and " + MAX_ENTITY_TYPES);
+		}
+		this.entityTypes = entityTypes;
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the fraction of malformed lines. The default value is 0. 
+	 * The sum of the hit ratio and the malformed rate cannot exceed 1.
+	 * 
+	 * @param malformedRate
+	 * @return
+	 */
+	public LogGenerator setMalformedRate(double malformedRate) {
+		if ((malformedRate < 0) || (malformedRate > 1)) {
+			throw new IllegalArgumentException("Malformed rate must be between 0 and 1");
+		}
+		this.malformedRate = malformedRate;
+		
+		return this;
+	}
+	
+	public List<String> generate(int lineCount) {
+		List<String> lines = new ArrayList<String>(lineCount);
+		Random random = createRandom();
+		for (int i = 0; i < lineCount; i++) {
+			lines.add(nextLine(random));
+		}
+		
+		return lines;
+	}
+	
+	public void generate(int lineCount, Writer writer) throws IOException {
+		Random random = createRandom();
+		for (int i = 0; i < lineCount; i++) {
+			writer.write(nextLine(random));
+			writer.write('\n');
+		}
+	}
+	
+	public void generate(int lineCount, Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+			generate(lineCount, writer);
+		}
+	}
+	
+	private Random createRandom() {
+		if (hitRatio + malformedRate > 1) {
+			throw new IllegalStateException("The sum of hit ratio and malformed rate cannot exceed 1");
+		}
+		
+		return new Random(seed);
+	}
+	
+	private String nextLine(Random random) {
+		StringBuilder line = new StringBuilder(lineLength + 16);
+		double kind = random.nextDouble();
+		if (kind < hitRatio) {
+			appendEntityLine(line, random, random.nextInt(entityTypes), false);
+		} else if (kind < hitRatio + malformedRate) {
+			appendEntityLine(line, random, random.nextInt(entityTypes), true);
+		} else {
+			line.append("[Winstone ");
+			appendDate(line, random);
+			line.append("] - ").append(MESSAGES[random.nextInt(MESSAGES.length)]);
+		}
+		
+		// pad with a hash
+		line.append(", ");
+		while (line.length() < lineLength) {
+			line.append(HEX[random.nextInt(HEX.length)]);
+		}
+		
+		return line.toString();
+	}
+	
+	private void appendEntityLine(StringBuilder line, Random random, int entityType, boolean malformed) {
+		line.append("[webapp ");
+		appendDate(line, random);
+		line.append("] - <$> ");
+		if (malformed) {
+			line.append("unknown");
+		} else {
+			line.append(random.nextInt(256)).append('.').append(random.nextInt(256)).append('.')
+				.append(random.nextInt(256)).append('.').append(random.nextInt(256));
+		}
+		
+		String file = FILES[random.nextInt(FILES.length)];
+		switch (entityType) {
+		case 0:
+			line.append(", /download/").append(file);
+			break;
+		case 1:
+			line.append(", /upload/").append(file).append(", ").append(random.nextInt(100000000));
+			break;
+		case 2:
+			line.append(", /view/reports.html, ").append(random.nextBoolean() ? 200 : 404)
+				.append(", ").append(random.nextInt(10)).append('.').append(random.nextInt(1000));
+			break;
+		default:
+			line.append(", /delete/").append(file).append(", ").append(random.nextBoolean());
+			break;
+		}
+	}
+	
+	private void appendDate(StringBuilder line, Random random) {
+		line.append("2013/");
+		appendTwoDigits(line, 1 + random.nextInt(12));
+		line.append('/');
+		appendTwoDigits(line, 1 + random.nextInt(28));
+		line.append(' ');
+		appendTwoDigits(line, 1 + random.nextInt(12));
+		line.append(':');
+		appendTwoDigits(line, random.nextInt(60));
+		line.append(':');
+		appendTwoDigits(line, random.nextInt(60));
+	}
+	
+	private static void appendTwoDigits(StringBuilder line, int value) {
+		if (value < 10) {
+			line.append('0');
+		}
+		line.append(value);
+	}
+	
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ro.fortsoft.ff2j.FF2J;
+import ro.fortsoft.ff2j.LineMapper;
+
+/**
+ * Measures the time to map a line (match and populate) with a {@link LineMapper}, which calls 
+ * the mapper of FF2J with one mapping context, on generated lines split in memory. The reading, 
+ * the handlers and the parsing lifecycle are not measured.
+ * 
+ * @author Decebal Suiu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+
+	private static final int LINES = 10000;
+	
+	@Param({ "0.2", "0.7" })
+	public double hitRatio;
+	
+	@Param("120")
+	public int lineLength;
+	
+	@Param({ "1", "4" })
+	public int entityTypes;
+	
+	@Param({ "0", "0.2" })
+	public double malformedRate;
+	
+	@Param({ "false", "true" })
+	public boolean multiPatternMatching;
+	
+	@Param("false")
+	public boolean adaptiveOrdering;
+	
+	private LineMapper lineMapper;
+	private CharSequence[] lines;
+	
+	@Setup
+	public void setUp() {
+		FF2J ff2j = new FF2J()
+			.setMultiPatternMatching(multiPatternMatching)
+			.setAdaptiveOrdering(adaptiveOrdering);
+		for (Class<?> entityClass : LogGenerator.getEntityClasses(entityTypes)) {
+			ff2j.map(entityClass);
+		}
+		lineMapper = ff2j.createLineMapper();
+		List<String> generated = new LogGenerator()
+			.setHitRatio(hitRatio)
+			.setLineLength(lineLength)
+			.setEntityTypes(entityTypes)
+			.setMalformedRate(malformedRate)
+			.generate(LINES);
+		lines = generated.toArray(new CharSequence[LINES]);
+	}
+	
+	/**
+	 * The time is per line.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void mapEntity(Blackhole blackhole) throws Exception {
+		for (int i = 0; i < LINES; i++) {
+			blackhole.consume(lineMapper.map(lines[i]));
+		}
+	}
+	
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.benchmark;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.fortsoft.ff2j.EntityHandler;
+import ro.fortsoft.ff2j.FF2J;
+
+/**
+ * Measures a complete parsing of a generated log file, from a file (chunked and mapped 
+ * on {@link #parallelism} threads) and from a reader.
+ * 
+ * @author Decebal Suiu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param("100000")
+	public int lines;
+	
+	@Param("0.7")
+	public double hitRatio;
+	
+	@Param("120")
+	public int lineLength;
+	
+	@Param({ "1", "4" })
+	public int entityTypes;
+	
+	@Param("0.05")
+	public double malformedRate;
+	
+	@Param({ "false", "true" })
+	public boolean multiPatternMatching;
+	
+	@Param("1")
+	public int parallelism;
+	
+	private Path file;
+	
+	@Setup
+	public void setUp() throws IOException {
+		file = Files.createTempFile("ff2j-benchmark", ".log");
+		new LogGenerator()
+			.setHitRatio(hitRatio)
+			.setLineLength(lineLength)
+			.setEntityTypes(entityTypes)
+			.setMalformedRate(malformedRate)
+			.generate(lines, file);
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+	
+	@Benchmark
+	public FF2J.Statistics parseFile() {
+		FF2J ff2j = createFF2J();
+		
+		return check(ff2j, ff2j.parse(file));
+	}
+	
+	@Benchmark
+	public FF2J.Statistics parseReader() throws IOException {
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+			FF2J ff2j = createFF2J();
+			
+			return check(ff2j, ff2j.parse(reader));
+		}
+	}
+	
+	private FF2J createFF2J() {
+		FF2J ff2j = new FF2J()
+			.setMultiPatternMatching(multiPatternMatching)
+			.setParallelism(parallelism);
+		for (Class<?> entityClass : LogGenerator.getEntityClasses(entityTypes)) {
+			ff2j.map(entityClass);
+		}
+		for (EntityHandler<?> entityHandler : EntityCounter.create(entityTypes)) {
+			ff2j.addEntityHandler(entityHandler);
+		}
+		
+		return ff2j;
+	}
+	
+	private static FF2J.Statistics check(FF2J ff2j, FF2J.Statistics statistics) {
+		if (ff2j.getError() != null) {
+			throw new IllegalStateException(ff2j.getError());
+		}
+		if (statistics.getEntitiesCounter().isEmpty()) {
+			throw new IllegalStateException("No entity was mapped");
+		}
+		
+		return statistics;
+	}
+	
+}
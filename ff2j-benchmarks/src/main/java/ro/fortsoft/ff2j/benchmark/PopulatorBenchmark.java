@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.benchmark;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.fortsoft.ff2j.FF2J;
+import ro.fortsoft.ff2j.LineMapper;
+import ro.fortsoft.ff2j.RegexEntity;
+import ro.fortsoft.ff2j.RegexField;
+import ro.fortsoft.ff2j.converter.Converter;
+import ro.fortsoft.ff2j.converter.ConverterUtils;
+import ro.fortsoft.ff2j.converter.DefaultConverter;
+
+/**
+ * Compares the creation of an entity by FF2J (method handles bound at map time, 
+ * see {@link LineMapper#populate(Class, CharSequence, java.util.regex.MatchResult)}) against the per line 
+ * reflection (Field.setAccessible, Field.set and a constructor call) used before. Both sides populate 
+ * the same entity from the same match, made once.
+ * 
+ * @author Decebal Suiu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PopulatorBenchmark {
+
+	private String line = "GET /download/nextreports-setup-6.1.exe 200 48213 125";
+	private Matcher matcher;
+	private LineMapper lineMapper;
+	
+	@Setup
+	public void setUp() {
+		matcher = Pattern.compile(Request.PATTERN).matcher(line);
+		if (!matcher.matches()) {
+			throw new IllegalStateException("The sample line doesn't match");
+		}
+		lineMapper = new FF2J().map(Request.class).createLineMapper();
+	}
+	
+	@Benchmark
+	public Request methodHandles() throws Exception {
+		return lineMapper.populate(Request.class, line, matcher);
+	}
+	
+	@Benchmark
+	public Request reflection() throws Exception {
+		Request entity = Request.class.getDeclaredConstructor().newInstance();
+		for (Field field : Request.class.getDeclaredFields()) {
+			RegexField regexField = field.getAnnotation(RegexField.class);
+			if (regexField == null) {
+				continue;
+			}
+			
+			String text = matcher.group(regexField.group());
+			field.setAccessible(true);
+			if (String.class.equals(field.getType())) {
+			    field.set(entity, text);
+			} else {
+				Class<? extends Converter<?>> converter = regexField.converter();
+				Object value;
+				if (DefaultConverter.class.equals(converter)) {
+					value = ConverterUtils.convert(text, field.getType());
+				} else {
+					value = converter.getDeclaredConstructor().newInstance().decode(text);
+				}
+				field.set(entity, value);
+			}
+		}
+		
+		return entity;
+	}
+	
+	@RegexEntity
+	public static class Request {
+		
+		public static final String PATTERN = "(\\w+)\\s(\\S+)\\s(\\d+)\\s(\\d+)\\s(\\d+)";
+		
+		@RegexField(group = 1)
+		private String method;
+		
+		@RegexField(group = 2)
+		private String path;
+		
+		@RegexField(group = 3)
+		private Integer status;
+		
+		@RegexField(group = 4)
+		private Long bytes;
+		
+		@RegexField(group = 5)
+		private Integer duration;
+		
+	}
+	
+}
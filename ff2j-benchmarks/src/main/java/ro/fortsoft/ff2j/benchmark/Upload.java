@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.benchmark;
+
+import java.util.Date;
+
+import ro.fortsoft.ff2j.RegexEntity;
+import ro.fortsoft.ff2j.RegexField;
+import ro.fortsoft.ff2j.demo.MyDateConverter;
+
+/**
+ * An upload line of the generated logs, with a long field.
+ * 
+ * @author Decebal Suiu
+ */
+@RegexEntity(pattern = "PATTERN")
+public class Upload {
+
+	// [webapp 2013/06/13 17:21:40] - <$> 195.226.212.33, /upload/nextreports-setup-6.1.exe, 48213
+	public static final String PATTERN = "\\[webapp\\s"
+			+ "(20[0-1][0-9]/\\d{2}/\\d{2}\\s\\d{2}:\\d{2}:\\d{2})" // date
+			+ "\\]\\s-\\s<\\$>\\s"
+			+ "(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3})" // ip
+			+ ",\\s/upload/"
+			+ "([^,]*)" // file
+			+ ",\\s(\\d+)" // size
+			+ ".*";
+
+	@RegexField(group = 1, converter = MyDateConverter.class)
+	private Date date;
+	
+	@RegexField(group = 2)
+	private String ip;
+	
+	@RegexField(group = 3)
+	private String file;
+	
+	@RegexField(group = 4)
+	private long size;
+	
+	public String getFile() {
+		return file;
+	}
+	
+	public long getSize() {
+		return size;
+	}
+	
+}
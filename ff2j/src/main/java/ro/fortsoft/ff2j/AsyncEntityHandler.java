@@ -0,0 +1,226 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An entity handler that delivers the entities to another handler asynchronously, through a dedicated
+ * bounded queue served by its own thread (or by a task of an {@link Executor}, for example a virtual thread 
+ * executor). A slow handler (a database writer) doesn't hold back the parsing or the other handlers 
+ * of the same entity type, until its queue is full.
+ * <p>
+ * The entities are delivered in the order in which they are received. {@link #afterLastEntity()} waits until 
+ * the queue is drained and then calls afterLastEntity() of the handler. If the handler fails, the next 
+ * call of {@link #handleEntity(Object)} (or {@link #afterLastEntity()}) throws an exception, which stops the parsing.
+ * If the consumer stops (interrupted), a call that waits for a place in the full queue throws an exception.
+ * <p>
+ * Only an ordered handler can be wrapped: a {@link BatchEntityHandler} or an {@link UnorderedEntityHandler} 
+ * is rejected, because FF2J wouldn't deliver batches or unordered entities through the queue.
+ * 
+ * @author Decebal Suiu
+ */
+public class AsyncEntityHandler<T> implements EntityHandler<T> {
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	
+	private static final Object END = new Object();
+	
+	/** The time between two checks of the consumer while the queue is full */
+	private static final long PUT_CHECK_INTERVAL = 100;
+	
+	private EntityHandler<T> entityHandler;
+	private int queueCapacity;
+	private Executor executor;
+	
+	private BlockingQueue<Object> queue;
+	private CountDownLatch drained;
+	private volatile long submittedCount;
+	private volatile long handledCount;
+	private volatile Throwable error;
+	
+	public AsyncEntityHandler(EntityHandler<T> entityHandler) {
+		this(entityHandler, DEFAULT_QUEUE_CAPACITY);
+	}
+	
+	public AsyncEntityHandler(EntityHandler<T> entityHandler, int queueCapacity) {
+		this(entityHandler, queueCapacity, null);
+	}
+
+	/**
+	 * @param entityHandler the handler that receives the entities
+	 * @param queueCapacity the max number of pending entities
+	 * @param executor the executor that runs the consumer of the queue, or null for a dedicated thread
+	 */
+	public AsyncEntityHandler(EntityHandler<T> entityHandler, int queueCapacity, Executor executor) {
+		if ((entityHandler instanceof BatchEntityHandler) || (entityHandler instanceof UnorderedEntityHandler)) {
+			throw new IllegalArgumentException("Only an ordered entity handler can be asynchronous");
+		}
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be greater than zero");
+		}
+		
+		this.entityHandler = entityHandler;
+		this.queueCapacity = queueCapacity;
+		this.executor = executor;
+	}
+	
+	public EntityHandler<T> getEntityHandler() {
+		return entityHandler;
+	}
+
+	@Override
+	public void beforeFirstEntity() {
+		queue = new ArrayBlockingQueue<Object>(queueCapacity);
+		drained = new CountDownLatch(1);
+		submittedCount = 0;
+		handledCount = 0;
+		error = null;
+		
+		entityHandler.beforeFirstEntity();
+		
+		Runnable consumer = new Runnable() {
+
+			@Override
+			public void run() {
+				consume();
+			}
+			
+		};
+		if (executor != null) {
+			executor.execute(consumer);
+		} else {
+			Thread thread = new Thread(consumer, "ff2j-" + entityHandler.getClass().getSimpleName());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	@Override
+	public void handleEntity(T entity) {
+		if (error != null) {
+			throw new RuntimeException("The entity handler " + entityHandler + " failed", error);
+		}
+		
+		put(entity);
+		submittedCount++;
+	}
+
+	@Override
+	public void afterLastEntity() {
+		if (queue == null) {
+			// not started (a parsing that failed before the handlers were started), nothing is queued
+			entityHandler.afterLastEntity();
+			return;
+		}
+		
+		if (drained.getCount() > 0) {
+			put(END);
+		}
+		try {
+			drained.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		
+		entityHandler.afterLastEntity();
+		
+		// a failure on the last queued entities
+		if (error != null) {
+			throw new RuntimeException("The entity handler " + entityHandler + " failed", error);
+		}
+	}
+	
+	/**
+	 * Returns the number of entities waiting in the queue.
+	 */
+	public int getQueueSize() {
+		return (queue != null) ? queue.size() : 0;
+	}
+	
+	/**
+	 * Returns the number of entities received from FF2J.
+	 */
+	public long getSubmittedCount() {
+		return submittedCount;
+	}
+
+	/**
+	 * Returns the number of entities delivered to the handler.
+	 */
+	public long getHandledCount() {
+		return handledCount;
+	}
+	
+	/**
+	 * Returns the number of entities received but not yet handled (queued or in progress).
+	 */
+	public long getLag() {
+		return submittedCount - handledCount;
+	}
+
+	/**
+	 * Returns the exception thrown by the handler, if any. 
+	 */
+	public Throwable getError() {
+		return error;
+	}
+	
+	/**
+	 * Waits for a free place in the queue, while the consumer is running.
+	 */
+	private void put(Object entity) {
+		try {
+			while (!queue.offer(entity, PUT_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+				if (drained.getCount() == 0) {
+					throw new RuntimeException("The consumer of the entity handler " + entityHandler + " stopped", error);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void consume() {
+		try {
+			while (true) {
+				Object entity = queue.take();
+				if (entity == END) {
+					break;
+				}
+				
+				// after an error the queue is only drained
+				if (error == null) {
+					try {
+						entityHandler.handleEntity((T) entity);
+					} catch (Throwable t) {
+						error = t;
+					}
+				}
+				handledCount++;
+			}
+		} catch (InterruptedException e) {
+			error = e;
+		} finally {
+			drained.countDown();
+		}
+	}
+	
+}
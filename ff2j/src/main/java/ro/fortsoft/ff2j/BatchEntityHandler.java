@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.List;
+
+/**
+ * An entity handler that receives the entities in batches, for bulk sinks (database, file, ...).
+ * FF2J collects the entities of the handler's type and calls {@link #handleEntities(List)} when a batch 
+ * is full (see {@link FF2J#setBatchSize(int)}), when the first entity of a batch waited too long 
+ * (see {@link FF2J#setBatchMaxLatency(long)}) and at the end of parsing, before {@link #afterLastEntity()}.
+ * FF2J doesn't call {@link #handleEntity(Object)} for a batch entity handler.
+ * <p>
+ * The batches are delivered in file order, from the calling thread (also for a parallel parsing).
+ * 
+ * @author Decebal Suiu
+ */
+public interface BatchEntityHandler<T> extends EntityHandler<T> {
+
+	/**
+	 * Handle a batch of entities. The list is reused by FF2J after this method returns, 
+	 * so copy it if you need to keep the entities.
+	 * 
+	 * @param entities
+	 */
+	public void handleEntities(List<T> entities);
+	
+}
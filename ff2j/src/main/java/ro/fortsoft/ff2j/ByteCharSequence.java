@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reusable view of a byte range as a sequence of ISO-8859-1 characters (each byte is a character). 
+ * No bytes are copied until a sub sequence or a string is requested.
+ * 
+ * @author Decebal Suiu
+ */
+class ByteCharSequence implements CharSequence {
+
+	private ByteBuffer buffer;
+	private int offset;
+	private int length;
+	
+	public ByteCharSequence reset(ByteBuffer buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+		
+		return this;
+	}
+	
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if ((index < 0) || (index >= length)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+		}
+		
+		return (char) (buffer.get(offset + index) & 0xff);
+	}
+
+	/**
+	 * Returns a string (a copy), because this view is reused.
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return toString(0, length);
+	}
+	
+	private String toString(int start, int end) {
+		if ((start < 0) || (end > length) || (start > end)) {
+			throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end + ", length: " + length);
+		}
+
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(offset + start + i);
+		}
+		
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Iterates over the lines of a byte buffer. The line separators are searched over the bytes. A line that 
+ * contains only ASCII bytes (or any line for ISO-8859-1) is returned as a reusable view, without decoding.
+ * Other lines are decoded with the charset.
+ * 
+ * @author Decebal Suiu
+ */
+class ByteLineScanner {
+
+	private ByteBuffer buffer;
+	private Charset charset;
+	private boolean latin1;
+	private boolean asciiCompatible;
+	private ByteCharSequence view;
+	private int position;
+	private int limit;
+	
+	public ByteLineScanner(ByteBuffer buffer, Charset charset) {
+		this.buffer = buffer;
+		this.charset = charset;
+		
+		latin1 = StandardCharsets.ISO_8859_1.equals(charset);
+		asciiCompatible = latin1 || StandardCharsets.US_ASCII.equals(charset) || StandardCharsets.UTF_8.equals(charset);
+		view = new ByteCharSequence();
+		position = buffer.position();
+		limit = buffer.limit();
+	}
+	
+	/**
+	 * Returns the position in buffer of the first byte after the last returned line (and its line separator).
+	 */
+	public int getPosition() {
+		return Math.min(position, limit);
+	}
+	
+	/**
+	 * Restarts the scanning over another range of the buffer.
+	 */
+	public void reset(int position, int limit) {
+		this.position = position;
+		this.limit = limit;
+	}
+	
+	/**
+	 * Returns the next line (without the line separator) or null at the end of the buffer. 
+	 * The view is valid until the next call.
+	 */
+	public CharSequence nextLine() {
+		if (position >= limit) {
+			return null;
+		}
+		
+		// the bytes are or-ed to find non ASCII (negative) bytes
+		int bits = 0;
+		int lineStart = position;
+		int lineEnd = lineStart;
+		byte b;
+		while ((lineEnd < limit) && ((b = buffer.get(lineEnd)) != '\n')) {
+			bits |= b;
+			lineEnd++;
+		}
+		position = lineEnd + 1;
+		if ((lineEnd > lineStart) && (buffer.get(lineEnd - 1) == '\r')) {
+			lineEnd--;
+		}
+		
+		if (latin1 || (asciiCompatible && (bits >= 0))) {
+			return view.reset(buffer, lineStart, lineEnd - lineStart);
+		}
+		
+		return decode(lineStart, lineEnd);
+	}
+	
+	private String decode(int start, int end) {
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.limit(end);
+		bytes.position(start);
+		
+		return charset.decode(bytes).toString();
+	}
+	
+}
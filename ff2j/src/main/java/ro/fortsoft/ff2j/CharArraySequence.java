@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+/**
+ * A reusable view of a char array range. No chars are copied until a sub sequence or a string is requested.
+ * 
+ * @author Decebal Suiu
+ */
+class CharArraySequence implements CharSequence {
+
+	private char[] chars;
+	private int offset;
+	private int length;
+	
+	public CharArraySequence reset(char[] chars, int offset, int length) {
+		this.chars = chars;
+		this.offset = offset;
+		this.length = length;
+		
+		return this;
+	}
+	
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if ((index < 0) || (index >= length)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+		}
+		
+		return chars[offset + index];
+	}
+
+	/**
+	 * Returns a string (a copy), because this view is reused.
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if ((start < 0) || (end > length) || (start > end)) {
+			throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end + ", length: " + length);
+		}
+		
+		return new String(chars, offset + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, offset, length);
+	}
+	
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * The position of the last processed line of a file, used to resume the parsing from that position 
+ * with {@link FF2J#parse(Path, Checkpoint)} without reading the processed lines again.
+ * <p>
+ * A checkpoint holds the byte offset and the number of the last processed line, the identity of 
+ * the file (see {@link BasicFileAttributes#fileKey()}) and a fingerprint (a CRC32 checksum of the first 
+ * and of the last {@value #FINGERPRINT_SIZE} bytes before the offset). A checkpoint matches a file only if 
+ * the file is the same and the processed content was not changed, so a resume on a rotated or rewritten 
+ * file is detected.
+ * <p>
+ * When the parsing was stopped by a listener, by a handler or by an error, the last processed line is the line 
+ * whose entity (or no entity line) was being delivered. The checkpoint cannot be exact for an {@link UnorderedEntityHandler}: 
+ * it receives the entities while the chunks are mapped, so it may have received the entities of lines after 
+ * the offset, which are delivered again when the parsing is resumed.
+ * <p>
+ * A checkpoint is saved as a properties file:
+ * <pre>
+ * version=1
+ * path=/var/log/winstone.log
+ * fileKey=(dev\=803,ino\=1835853)
+ * offset=45107203
+ * lineNumber=865628
+ * fingerprint=2832145874
+ * </pre>
+ * 
+ * @author Decebal Suiu
+ */
+public class Checkpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * The number of bytes from the start and from the end of the processed content used for the fingerprint.
+	 */
+	public static final int FINGERPRINT_SIZE = 4096;
+	
+	private static final String VERSION = "1";
+	
+	private String path;
+	private String fileKey;
+	private long offset;
+	private long lineNumber;
+	private long fingerprint;
+	
+	private Checkpoint(String path, String fileKey, long offset, long lineNumber, long fingerprint) {
+		this.path = path;
+		this.fileKey = fileKey;
+		this.offset = offset;
+		this.lineNumber = lineNumber;
+		this.fingerprint = fingerprint;
+	}
+	
+	/**
+	 * Creates the checkpoint of the last processed line of a file, from the statistics returned 
+	 * by {@link FF2J#parse(Path)}.
+	 * 
+	 * @throws IllegalArgumentException if the statistics have no offset (the input was a <code>Reader</code>)
+	 */
+	public static Checkpoint create(Path path, FF2J.Statistics statistics) throws IOException {
+		if (statistics.getEndOffset() < 0) {
+			throw new IllegalArgumentException("The statistics have no offset");
+		}
+		
+		return create(path, statistics.getEndOffset(), statistics.getEndLineNumber());
+	}
+
+	/**
+	 * Creates the checkpoint of a line of a file.
+	 * 
+	 * @param offset the position in file after the line (and its line separator)
+	 * @param lineNumber the number of the line
+	 */
+	public static Checkpoint create(Path path, long offset, long lineNumber) throws IOException {
+		if ((offset < 0) || (lineNumber < 0)) {
+			throw new IllegalArgumentException("Offset and line number must be positive");
+		}
+		
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			if (offset > channel.size()) {
+				throw new IllegalArgumentException("Offset " + offset + " is after the end of file");
+			}
+			
+			return new Checkpoint(path.toAbsolutePath().toString(), getFileKey(path), offset, lineNumber, 
+					fingerprint(channel, offset));
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Loads a checkpoint saved with {@link #save(Path)}.
+	 */
+	public static Checkpoint load(Path file) throws IOException {
+		Properties properties = new Properties();
+		InputStream input = Files.newInputStream(file);
+		try {
+			properties.load(input);
+		} finally {
+			input.close();
+		}
+		
+		if (!VERSION.equals(properties.getProperty("version"))) {
+			throw new IOException("Unsupported checkpoint version '" + properties.getProperty("version") + "' in " + file);
+		}
+		try {
+			String fileKey = properties.getProperty("fileKey");
+			if ((fileKey != null) && fileKey.isEmpty()) {
+				fileKey = null;
+			}
+			
+			return new Checkpoint(properties.getProperty("path"), fileKey, 
+					Long.parseLong(properties.getProperty("offset")),
+					Long.parseLong(properties.getProperty("lineNumber")),
+					Long.parseLong(properties.getProperty("fingerprint")));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid checkpoint " + file, e);
+		}
+	}
+	
+	/**
+	 * Saves the checkpoint in a properties file. The file is replaced atomically (when the file system 
+	 * supports it), so a crash doesn't leave a partial checkpoint.
+	 */
+	public void save(Path file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("version", VERSION);
+		properties.setProperty("path", path);
+		properties.setProperty("fileKey", (fileKey != null) ? fileKey : "");
+		properties.setProperty("offset", String.valueOf(offset));
+		properties.setProperty("lineNumber", String.valueOf(lineNumber));
+		properties.setProperty("fingerprint", String.valueOf(fingerprint));
+		
+		Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+		OutputStream output = Files.newOutputStream(tmpFile);
+		try {
+			properties.store(output, "FF2J checkpoint");
+		} finally {
+			output.close();
+		}
+		try {
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Returns the absolute path of the file when the checkpoint was created.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	public String getFileKey() {
+		return fileKey;
+	}
+
+	/**
+	 * Returns the position in file after the last processed line.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the number of the last processed line.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Returns true if the parsing of the file can be resumed from this checkpoint.
+	 */
+	public boolean matches(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			return verify(path, channel) == null;
+		} finally {
+			channel.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Checkpoint [path=" + path + ", fileKey=" + fileKey + ", offset=" + offset + ", lineNumber=" 
+				+ lineNumber + ", fingerprint=" + fingerprint + "]";
+	}
+	
+	/**
+	 * Returns the reason of the mismatch, or null if the checkpoint matches the file.
+	 */
+	String verify(Path path, FileChannel channel) throws IOException {
+		String currentFileKey = getFileKey(path);
+		if ((fileKey != null) && (currentFileKey != null) && !fileKey.equals(currentFileKey)) {
+			return "The file " + path + " is not the file of the checkpoint (" + currentFileKey + " instead of " + fileKey + ")";
+		}
+		if (channel.size() < offset) {
+			return "The file " + path + " is shorter than the offset of the checkpoint (" + offset + ")";
+		}
+		if (fingerprint(channel, offset) != fingerprint) {
+			return "The content of the file " + path + " before the offset of the checkpoint was changed";
+		}
+		
+		return null;
+	}
+	
+	private static String getFileKey(Path path) throws IOException {
+		Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+		
+		return (fileKey != null) ? fileKey.toString() : null;
+	}
+	
+	private static long fingerprint(FileChannel channel, long offset) throws IOException {
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate(FINGERPRINT_SIZE);
+		update(crc, channel, buffer, 0, Math.min(FINGERPRINT_SIZE, offset));
+		if (offset > FINGERPRINT_SIZE) {
+			long start = Math.max(FINGERPRINT_SIZE, offset - FINGERPRINT_SIZE);
+			update(crc, channel, buffer, start, offset);
+		}
+		
+		return crc.getValue();
+	}
+	
+	private static void update(CRC32 crc, FileChannel channel, ByteBuffer buffer, long start, long end) throws IOException {
+		buffer.clear();
+		buffer.limit((int) (end - start));
+		long position = start;
+		while (buffer.hasRemaining()) {
+			int count = channel.read(buffer, position);
+			if (count < 0) {
+				throw new IOException("Unexpected end of file at " + position);
+			}
+			position += count;
+		}
+		buffer.flip();
+		crc.update(buffer);
+	}
+	
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+/**
+ * Thrown when a {@link Checkpoint} doesn't match the file to parse (another file, or the same file 
+ * with another content before the checkpoint's offset).
+ *
+ * @see Checkpoint
+ * @author Decebal Suiu
+ */
+public class CheckpointException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CheckpointException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a file by cutting it in chunks on line boundaries. The chunks are mapped on a fork-join pool 
+ * and the results are delivered in file order from the calling thread. Only a limited number of chunks 
+ * (two per worker) are in progress at a time. When the parsing ends (stopped or failed), the running chunks 
+ * stop at the next line and the parsing waits for them, so no entity reaches an unordered handler 
+ * after the parsing returned.
+ * 
+ * @author Decebal Suiu
+ */
+class ChunkedFileParser {
+
+	private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+	
+	private FF2J ff2j;
+	private FileChannel channel;
+	private long lineNumber;
+	/** The position in file after the last processed line */
+	private long offset;
+	/** The mapping contexts of the worker threads, reused from chunk to chunk */
+	private ThreadLocal<MappingContext> contexts;
+	/** Added to the line number published in the statistics (the lines of the previous files) */
+	private long progressBase;
+	/** Set when the parsing ends, the running chunks stop at the next line */
+	private volatile boolean stopped;
+	
+	public ChunkedFileParser(FF2J ff2j, FileChannel channel) {
+		this(ff2j, channel, createContexts(ff2j));
+	}
+	
+	public ChunkedFileParser(FF2J ff2j, FileChannel channel, ThreadLocal<MappingContext> contexts) {
+		this.ff2j = ff2j;
+		this.channel = channel;
+		this.contexts = contexts;
+	}
+	
+	/**
+	 * Creates the mapping contexts of the worker threads.
+	 */
+	static ThreadLocal<MappingContext> createContexts(final FF2J ff2j) {
+		return new ThreadLocal<MappingContext>() {
+
+			@Override
+			protected MappingContext initialValue() {
+				return ff2j.getMapper().createContext();
+			}
+			
+		};
+	}
+
+	/**
+	 * Returns the number of the last processed line.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+	
+	/**
+	 * Returns the position in file after the last processed line.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+	
+	/**
+	 * Returns false if the parsing was stopped by a listener or by a handler.
+	 */
+	public boolean parse() throws Exception {
+		return parse(skipLines(ff2j.getSkipLines(), channel.size()), lineNumber);
+	}
+	
+	/**
+	 * Parses the file from the given position, the start of the line that follows the given line number. 
+	 * Returns false if the parsing was stopped by a listener or by a handler.
+	 */
+	public boolean parse(long position, long lineNumber) throws Exception {
+		start(position, lineNumber);
+		long size = channel.size();
+		int parallelism = ff2j.getParallelism();
+		int window = 2 * parallelism;
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		Deque<Future<FileChunk>> pending = new ArrayDeque<Future<FileChunk>>();
+		try {
+			while (true) {
+				while ((pending.size() < window) && (position < size)) {
+					FileChunk chunk = createChunk(position, size);
+					pending.add(pool.submit(chunk));
+					position = chunk.getEnd();
+				}
+				
+				Future<FileChunk> future = pending.poll();
+				if (future == null) {
+					break;
+				}
+				if (!deliver(future.get())) {
+					return false;
+				}
+			}
+		} finally {
+			stop();
+			for (Future<FileChunk> future : pending) {
+				future.cancel(true);
+			}
+			shutdown(pool);
+		}
+		
+		return true;
+	}
+
+	/**
+	 * Sets the value added to the line number published in the statistics while the chunks are delivered.
+	 */
+	void setProgressBase(long progressBase) {
+		this.progressBase = progressBase;
+	}
+	
+	/**
+	 * Returns true if the running chunks must stop.
+	 */
+	boolean isStopped() {
+		return stopped;
+	}
+	
+	/**
+	 * Stops the running chunks of this parser at the next line.
+	 */
+	void stop() {
+		stopped = true;
+	}
+	
+	/**
+	 * Stops the pool and waits until the running chunks are stopped.
+	 */
+	static void shutdown(ForkJoinPool pool) {
+		pool.shutdownNow();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (pool.awaitTermination(1, TimeUnit.SECONDS)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Sets the position and the line number of the first chunk, before the chunks are delivered.
+	 */
+	void start(long position, long lineNumber) {
+		this.lineNumber = lineNumber;
+		offset = position;
+	}
+	
+	/**
+	 * Creates the chunk that starts at the given position. The end of the chunk is the first line end 
+	 * after the chunk size.
+	 */
+	FileChunk createChunk(long position, long size) throws IOException {
+		long end = nextLineStart(channel, position + ff2j.getChunkSize(), size);
+		
+		return new FileChunk(ff2j, this, channel, position, end, contexts);
+	}
+	
+	/**
+	 * Delivers the events of a chunk, the chunks must be delivered in file order.
+	 * Returns false if the parsing was stopped by a listener or by a handler.
+	 */
+	boolean deliver(FileChunk chunk) throws Exception {
+		FF2J.Statistics statistics = ff2j.getStatistics();
+		statistics.addCounters(chunk.getEntityCounts());
+		
+		long firstLineNumber = lineNumber;
+		ProgressListener progressListener = ff2j.getProgressListener();
+		if ((progressListener != null) && !progressListener.inProgress(firstLineNumber + chunk.getLineCount())) {
+			return false;
+		}
+		
+		for (FileChunk.LineEvent event : chunk.getEvents()) {
+			// the position is set before the delivery, so it's the line of the event if a handler stops or fails
+			lineNumber = firstLineNumber + event.getLineIndex();
+			offset = event.getOffset();
+			statistics.setProcessedLineNumber(progressBase + lineNumber);
+			Object entity = event.getEntity();
+			if (entity != null) {
+				ff2j.handleOrderedEntity(entity);
+			} else if (!ff2j.getNoEntityHandler().handleNoEntity(lineNumber, event.getLineText())) {
+				return false;
+			}
+		}
+		lineNumber = firstLineNumber + chunk.getLineCount();
+		offset = chunk.getProcessedEnd();
+		statistics.setProcessedLineNumber(progressBase + lineNumber);
+		if (ff2j.getBatchMaxLatency() > 0) {
+			ff2j.flushExpiredBatches();
+		}
+		
+		if (chunk.getError() != null) {
+			throw chunk.getError();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns the position of the first line after the skipped lines.
+	 */
+	long skipLines(long skipLines, long size) throws IOException {
+		long position = 0;
+		if (skipLines <= 0) {
+			return position;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		while (position < size) {
+			buffer.clear();
+			int count = channel.read(buffer, position);
+			if (count < 0) {
+				break;
+			}
+			for (int i = 0; i < count; i++) {
+				if (buffer.get(i) == '\n') {
+					lineNumber++;
+					if (lineNumber == skipLines) {
+						return position + i + 1;
+					}
+				}
+			}
+			position += count;
+		}
+		
+		// the last line doesn't end with a line separator
+		if (size > 0) {
+			buffer.clear();
+			buffer.limit(1);
+			channel.read(buffer, size - 1);
+			if (buffer.get(0) != '\n') {
+				lineNumber++;
+			}
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Returns the position after the first line separator found at or after the given position.
+	 */
+	static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		while (position < size) {
+			buffer.clear();
+			int count = channel.read(buffer, position);
+			if (count < 0) {
+				break;
+			}
+			for (int i = 0; i < count; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += count;
+		}
+		
+		return size;
+	}
+	
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps the lines of a delimited file (CSV, TSV, pipe delimited, ...), where each field is identified 
+ * by its index (see {@link DelimitedField}). The lines are split in a single pass, without a regex 
+ * and without creating the strings of the fields that are not mapped.
+ * <p>
+ * A field may be quoted, a quote in a quoted field is doubled (<code>"a ""quoted"" word"</code>).
+ * If an escape character is set, it makes the next character literal, in a quoted field or not
+ * (<code>a\|b</code>). A line with fewer fields than the greatest mapped index, or with a quoted 
+ * field that is not closed, is not mapped to the entity.
+ * <p>
+ * If the record type is set, only the lines whose field at the record type index is equal to 
+ * the record type are mapped to this entity; otherwise every line is mapped to this entity.
+ * 
+ * @author Decebal Suiu
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+public @interface DelimitedEntity {
+
+	char separator() default ',';
+	
+	/**
+	 * The quote character, <code>'\0'</code> if the fields are not quoted.
+	 */
+	char quote() default '"';
+	
+	/**
+	 * The escape character, <code>'\0'</code> (the default value) if there is no escape character.
+	 */
+	char escape() default '\0';
+	
+	/**
+	 * The value of the field that identifies the lines of this entity, empty for all lines.
+	 */
+	String recordType() default "";
+	
+	/**
+	 * The index (zero based) of the record type field.
+	 */
+	int recordTypeIndex() default 0;
+	
+	/**
+	 * The entities with a higher priority are tried first. The entities with the same 
+	 * priority are tried in the order in which they were mapped.
+	 */
+	int priority() default 0;
+	
+}
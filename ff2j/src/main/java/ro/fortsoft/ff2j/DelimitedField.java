@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import ro.fortsoft.ff2j.converter.Converter;
+import ro.fortsoft.ff2j.converter.DefaultConverter;
+
+/**
+ * A field of a {@link DelimitedEntity}, without the quotes and the escapes.
+ * 
+ * @author Decebal Suiu
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface DelimitedField {
+
+	/**
+	 * The index (zero based) of the field in the line.
+	 */
+	int index();
+	
+	Class<? extends Converter<?>> converter() default DefaultConverter.class;
+	
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.MatchResult;
+
+/**
+ * Matches the lines of a {@link DelimitedEntity}: splits the line in a single pass, up to the last 
+ * mapped field, and records the bounds of the fields (without the quotes). The group i of the match 
+ * is the field with the index i - 1, the group 0 is the line. The matcher is its own match result, 
+ * reused for all lines, so a line is split without allocation.
+ * <p>
+ * The text of a field with doubled quotes or escapes is not a range of the line. Its start is -1,
+ * so the populator falls back to {@link #group(int)} which removes the escapes.
+ * 
+ * @author Decebal Suiu
+ */
+class DelimitedMatcher implements LineMatcher, MatchResult {
+
+	private Layout layout;
+	private CharSequence lineText;
+	/** The bounds of each group, the quotes excluded */
+	private int[] starts;
+	private int[] ends;
+	/** True if the field was quoted */
+	private boolean[] quoted;
+	/** True if the field contains a doubled quote or an escape */
+	private boolean[] escaped;
+	
+	public DelimitedMatcher(Layout layout) {
+		this.layout = layout;
+		
+		int groups = layout.fieldCount + 1;
+		starts = new int[groups];
+		ends = new int[groups];
+		quoted = new boolean[groups];
+		escaped = new boolean[groups];
+	}
+
+	@Override
+	public MatchResult match(CharSequence lineText) {
+		this.lineText = lineText;
+		int length = lineText.length();
+		char separator = layout.separator;
+		char quote = layout.quote;
+		char escape = layout.escape;
+		starts[0] = 0;
+		ends[0] = length;
+		int position = 0;
+		for (int group = 1; group < starts.length; group++) {
+			if (position > length) {
+				// fewer fields than needed
+				return null;
+			}
+			
+			boolean fieldEscaped = false;
+			if ((position < length) && (lineText.charAt(position) == quote) && (quote != '\0')) {
+				int start = position + 1;
+				int i = start;
+				while (true) {
+					if (i >= length) {
+						// the quote is not closed
+						return null;
+					}
+					char c = lineText.charAt(i);
+					if ((c == escape) && (escape != '\0')) {
+						fieldEscaped = true;
+						i += 2;
+					} else if (c == quote) {
+						if ((i + 1 < length) && (lineText.charAt(i + 1) == quote)) {
+							fieldEscaped = true;
+							i += 2;
+						} else {
+							break;
+						}
+					} else {
+						i++;
+					}
+				}
+				// i is the closing quote
+				if ((i + 1 < length) && (lineText.charAt(i + 1) != separator)) {
+					return null;
+				}
+				starts[group] = start;
+				ends[group] = i;
+				quoted[group] = true;
+				position = i + 2;
+			} else {
+				int start = position;
+				int i = start;
+				while (i < length) {
+					char c = lineText.charAt(i);
+					if (c == separator) {
+						break;
+					}
+					if ((c == escape) && (escape != '\0')) {
+						fieldEscaped = true;
+						i++;
+					}
+					i++;
+				}
+				i = Math.min(i, length);
+				starts[group] = start;
+				ends[group] = i;
+				quoted[group] = false;
+				position = i + 1;
+			}
+			escaped[group] = fieldEscaped;
+		}
+		
+		if (!layout.recordType.isEmpty() && !isRecordType()) {
+			return null;
+		}
+		
+		return this;
+	}
+	
+	@Override
+	public int start() {
+		return starts[0];
+	}
+
+	@Override
+	public int start(int group) {
+		return escaped[group] ? -1 : starts[group];
+	}
+
+	@Override
+	public int end() {
+		return ends[0];
+	}
+
+	@Override
+	public int end(int group) {
+		return escaped[group] ? -1 : ends[group];
+	}
+
+	@Override
+	public String group() {
+		return group(0);
+	}
+
+	@Override
+	public String group(int group) {
+		if (!escaped[group]) {
+			return lineText.subSequence(starts[group], ends[group]).toString();
+		}
+		
+		// remove the doubled quotes and the escapes
+		StringBuilder text = new StringBuilder(ends[group] - starts[group]);
+		for (int i = starts[group]; i < ends[group]; i++) {
+			char c = lineText.charAt(i);
+			if ((c == layout.escape) && (layout.escape != '\0') && (i + 1 < ends[group])) {
+				i++;
+				c = lineText.charAt(i);
+			} else if (quoted[group] && (c == layout.quote)) {
+				// the first quote of a doubled quote
+				i++;
+			}
+			text.append(c);
+		}
+		
+		return text.toString();
+	}
+
+	@Override
+	public int groupCount() {
+		return starts.length - 1;
+	}
+	
+	private boolean isRecordType() {
+		int group = layout.recordTypeIndex + 1;
+		String recordType = layout.recordType;
+		if (escaped[group]) {
+			return recordType.equals(group(group));
+		}
+		
+		int start = starts[group];
+		if (ends[group] - start != recordType.length()) {
+			return false;
+		}
+		for (int i = 0; i < recordType.length(); i++) {
+			if (lineText.charAt(start + i) != recordType.charAt(i)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * The separator, the quote, the escape, the record type and the number of fields to split.
+	 */
+	static class Layout {
+		
+		private char separator;
+		private char quote;
+		private char escape;
+		private String recordType;
+		private int recordTypeIndex;
+		/** The number of fields split from a line, up to the last mapped field */
+		private int fieldCount;
+		
+		public Layout(DelimitedEntity delimitedEntity, int maxIndex) {
+			separator = delimitedEntity.separator();
+			quote = delimitedEntity.quote();
+			escape = delimitedEntity.escape();
+			recordType = delimitedEntity.recordType();
+			recordTypeIndex = delimitedEntity.recordTypeIndex();
+			fieldCount = maxIndex + 1;
+			if (!recordType.isEmpty()) {
+				fieldCount = Math.max(fieldCount, recordTypeIndex + 1);
+			}
+		}
+		
+		/**
+		 * Returns the literals that appear in any line of the entity (the record type, if it has 
+		 * no quote and no escape).
+		 */
+		public List<String> getLiterals() {
+			List<String> literals = new ArrayList<String>();
+			if (!recordType.isEmpty() && ((quote == '\0') || (recordType.indexOf(quote) < 0)) 
+					&& ((escape == '\0') || (recordType.indexOf(escape) < 0))) {
+				literals.add(recordType);
+			}
+			
+			return literals;
+		}
+		
+	}
+	
+}
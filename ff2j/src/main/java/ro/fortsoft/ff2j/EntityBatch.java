@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pending entities of a {@link BatchEntityHandler}. The list is reused from batch to batch.
+ * 
+ * @author Decebal Suiu
+ */
+class EntityBatch {
+
+	private BatchEntityHandler<Object> entityHandler;
+	private int batchSize;
+	/** The max latency in nanoseconds (0 for no limit) */
+	private long maxLatency;
+	private List<Object> entities;
+	/** The time when the first entity of the batch was added */
+	private long firstEntityTime;
+	
+	@SuppressWarnings("unchecked")
+	public EntityBatch(BatchEntityHandler<?> entityHandler, int batchSize, long maxLatency) {
+		this.entityHandler = (BatchEntityHandler<Object>) entityHandler;
+		this.batchSize = batchSize;
+		this.maxLatency = TimeUnit.MILLISECONDS.toNanos(maxLatency);
+		
+		entities = new ArrayList<Object>(batchSize);
+	}
+	
+	public void add(Object entity) {
+		if ((maxLatency > 0) && entities.isEmpty()) {
+			firstEntityTime = System.nanoTime();
+		}
+		entities.add(entity);
+		if (entities.size() >= batchSize) {
+			flush();
+		} else if (maxLatency > 0) {
+			flushIfExpired(System.nanoTime());
+		}
+	}
+	
+	/**
+	 * Delivers the batch if its first entity waited more than the max latency.
+	 */
+	public void flushIfExpired(long now) {
+		if ((maxLatency > 0) && !entities.isEmpty() && (now - firstEntityTime >= maxLatency)) {
+			flush();
+		}
+	}
+	
+	public void flush() {
+		if (!entities.isEmpty()) {
+			try {
+				entityHandler.handleEntities(entities);
+			} finally {
+				entities.clear();
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The handlers of an entity type. The ordered handlers (including the batches of the {@link BatchEntityHandler}s)
+ * are called in file order, the {@link UnorderedEntityHandler}s can be called from any thread.
+ * 
+ * @author Decebal Suiu
+ */
+class EntityHandlers {
+
+	/** The statistics slot of the entity type */
+	private int slot;
+	/** An EntityHandler or an EntityBatch */
+	private List<Object> ordered;
+	private List<EntityHandler<Object>> unordered;
+	
+	public EntityHandlers(int slot) {
+		this.slot = slot;
+		
+		ordered = new ArrayList<Object>();
+		unordered = new ArrayList<EntityHandler<Object>>();
+	}
+	
+	public int getSlot() {
+		return slot;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public void addOrdered(EntityHandler<?> entityHandler) {
+		ordered.add((EntityHandler<Object>) entityHandler);
+	}
+	
+	public void addBatch(EntityBatch entityBatch) {
+		ordered.add(entityBatch);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public void addUnordered(EntityHandler<?> entityHandler) {
+		unordered.add((EntityHandler<Object>) entityHandler);
+	}
+	
+	public boolean hasOrdered() {
+		return !ordered.isEmpty();
+	}
+	
+	public boolean hasUnordered() {
+		return !unordered.isEmpty();
+	}
+
+	@SuppressWarnings("unchecked")
+	public void handleOrdered(Object entity) {
+		for (int i = 0; i < ordered.size(); i++) {
+			Object handler = ordered.get(i);
+			if (handler instanceof EntityBatch) {
+				((EntityBatch) handler).add(entity);
+			} else {
+				((EntityHandler<Object>) handler).handleEntity(entity);
+			}
+		}
+	}
+	
+	public void handleUnordered(Object entity) {
+		for (int i = 0; i < unordered.size(); i++) {
+			unordered.get(i).handleEntity(entity);
+		}
+	}
+	
+}
@@ -13,10 +13,11 @@
 package ro.fortsoft.ff2j;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import ro.fortsoft.ff2j.converter.Converter;
 
@@ -27,12 +28,24 @@ class EntityMetaData {
 
 	private Class<?> entityClass;
 	private Map<Field, FieldMetaData> fields;
-	private Pattern pattern;
+	/** The pattern of a regex entity */
+	private MatchEngine.CompiledRegex regex;
+	/** The layout of a fixed width entity */
+	private FixedWidthMatcher.Layout fixedWidthLayout;
+	/** The layout of a delimited entity */
+	private DelimitedMatcher.Layout delimitedLayout;
+	/** The text that identifies the lines of this entity at the record type start (null for all lines) */
+	private String recordType;
+	private int recordTypeStart;
+	private List<String> literals;
+	private int priority;
+	private EntityPopulator populator;
 	
 	public EntityMetaData(Class<?> entityClass) {
 		this.entityClass = entityClass;
 		
 		fields = new HashMap<Field, FieldMetaData>();
+		literals = Collections.emptyList();
 	}
 
 	public Class<?> getEntityClass() {
@@ -51,20 +64,99 @@ class EntityMetaData {
 		return fields.get(field);
 	}
 	
-	public Pattern getPattern() {
-		return pattern;
+	public MatchEngine.CompiledRegex getRegex() {
+		return regex;
 	}
 
-	public void setPattern(Pattern pattern) {
-		this.pattern = pattern;
+	public void setRegex(MatchEngine.CompiledRegex regex) {
+		this.regex = regex;
 	}
 	
+	public FixedWidthMatcher.Layout getFixedWidthLayout() {
+		return fixedWidthLayout;
+	}
+
+	public void setFixedWidthLayout(FixedWidthMatcher.Layout fixedWidthLayout) {
+		this.fixedWidthLayout = fixedWidthLayout;
+	}
+	
+	public DelimitedMatcher.Layout getDelimitedLayout() {
+		return delimitedLayout;
+	}
+
+	public void setDelimitedLayout(DelimitedMatcher.Layout delimitedLayout) {
+		this.delimitedLayout = delimitedLayout;
+	}
+	
+	/**
+	 * Creates a matcher of the lines of this entity, for a single thread.
+	 */
+	public LineMatcher createLineMatcher() {
+		if (fixedWidthLayout != null) {
+			return new FixedWidthMatcher(fixedWidthLayout);
+		}
+		if (delimitedLayout != null) {
+			return new DelimitedMatcher(delimitedLayout);
+		}
+		
+		return regex.createMatcher();
+	}
+	
+	public String getRecordType() {
+		return recordType;
+	}
+	
+	public int getRecordTypeStart() {
+		return recordTypeStart;
+	}
+	
+	/**
+	 * Sets the record type (empty for all lines) and its column.
+	 */
+	public void setRecordType(String recordType, int recordTypeStart) {
+		this.recordType = recordType.isEmpty() ? null : recordType;
+		this.recordTypeStart = recordTypeStart;
+	}
+	
+	/**
+	 * Returns the literals that appear in any line matched by the pattern.
+	 */
+	public List<String> getLiterals() {
+		return literals;
+	}
+
+	public void setLiterals(List<String> literals) {
+		this.literals = literals;
+	}
+	
+	public int getPriority() {
+		return priority;
+	}
+
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	public EntityPopulator getPopulator() {
+		return populator;
+	}
+
+	public void setPopulator(EntityPopulator populator) {
+		this.populator = populator;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("entityClass = " + entityClass);
 		sb.append(",");
-		sb.append("pattern = " + pattern);
+		sb.append("priority = " + priority);
+		sb.append(",");
+		sb.append("pattern = " + ((regex != null) ? regex.getRegex() : null));
+		sb.append(",");
+		sb.append("recordType = " + recordType);
+		sb.append(",");
+		sb.append("literals = " + literals);
 		sb.append(",");
 		sb.append("fields = " + fields);
 		
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.MatchResult;
+
+import ro.fortsoft.ff2j.converter.Converter;
+import ro.fortsoft.ff2j.converter.ConverterRegistry;
+import ro.fortsoft.ff2j.converter.DefaultConverter;
+import ro.fortsoft.ff2j.converter.ToBooleanConverter;
+import ro.fortsoft.ff2j.converter.ToDoubleConverter;
+import ro.fortsoft.ff2j.converter.ToIntConverter;
+import ro.fortsoft.ff2j.converter.ToLongConverter;
+
+/**
+ * Creates the entities of a class and populates their fields from the groups of a match.
+ * The constructor and the field setters are bound once, as method handles, when the entity 
+ * class is mapped, so no reflection is used while parsing. The converters are also resolved 
+ * (and the field converters created) once, so parsing needs no registry lookup.
+ * <p>
+ * A field of type int, long, double or boolean (or their wrappers) whose converter implements
+ * {@link ToIntConverter}, {@link ToLongConverter}, {@link ToDoubleConverter} or {@link ToBooleanConverter} 
+ * is decoded directly from the line, without a substring, and a primitive field is set without boxing.
+ * 
+ * @author Decebal Suiu
+ */
+class EntityPopulator {
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	
+	private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<Class<?>, Class<?>>();
+	
+	static {
+		WRAPPERS.put(boolean.class, Boolean.class);
+		WRAPPERS.put(byte.class, Byte.class);
+		WRAPPERS.put(short.class, Short.class);
+		WRAPPERS.put(int.class, Integer.class);
+		WRAPPERS.put(long.class, Long.class);
+		WRAPPERS.put(float.class, Float.class);
+		WRAPPERS.put(double.class, Double.class);
+		WRAPPERS.put(char.class, Character.class);
+	}
+	
+	private MethodHandle constructor;
+	private FieldPopulator[] fields;
+	/** The name and the converter of each field, for the metrics */
+	private String[] fieldLabels;
+	
+	public EntityPopulator(EntityMetaData entityMetaData, ConverterRegistry converterRegistry) throws Exception {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		
+		Class<?> entityClass = entityMetaData.getEntityClass();
+		Constructor<?> defaultConstructor;
+		try {
+			defaultConstructor = entityClass.getDeclaredConstructor();
+		} catch (NoSuchMethodException e) {
+			throw new Exception("In [" + entityClass.getName() + "]: Cannot find a constructor without parameters");
+		}
+		defaultConstructor.setAccessible(true);
+		constructor = lookup.unreflectConstructor(defaultConstructor).asType(CONSTRUCTOR_TYPE);
+		
+		List<FieldPopulator> fieldPopulators = new ArrayList<FieldPopulator>();
+		List<String> labels = new ArrayList<String>();
+		for (Field field : entityMetaData.getMappedFields()) {
+			EntityMetaData.FieldMetaData fieldMetaData = entityMetaData.getFieldMetaData(field);
+			field.setAccessible(true);
+			MethodHandle setter = lookup.unreflectSetter(field);
+			Class<?> type = field.getType();
+			Class<?> wrapperType = type.isPrimitive() ? WRAPPERS.get(type) : type;
+			int group = fieldMetaData.getGroup();
+			if (String.class.equals(type)) {
+				fieldPopulators.add(new FieldPopulator(type, group, null, setter));
+				labels.add(field.getName());
+				continue;
+			}
+			
+			Converter<?> converter;
+			if (DefaultConverter.class.equals(fieldMetaData.getConverter())) {
+				// null if there is no converter, the error is reported when the field is populated
+				converter = converterRegistry.lookup(wrapperType);
+			} else {
+				converter = createConverter(entityClass, fieldMetaData.getConverter());
+			}
+			
+			// the value is boxed for a wrapper field and unboxed for a primitive field by the setter
+			FieldPopulator fieldPopulator;
+			if (Integer.class.equals(wrapperType) && (converter instanceof ToIntConverter)) {
+				fieldPopulator = new IntFieldPopulator(type, group, converter, setter);
+			} else if (Long.class.equals(wrapperType) && (converter instanceof ToLongConverter)) {
+				fieldPopulator = new LongFieldPopulator(type, group, converter, setter);
+			} else if (Double.class.equals(wrapperType) && (converter instanceof ToDoubleConverter)) {
+				fieldPopulator = new DoubleFieldPopulator(type, group, converter, setter);
+			} else if (Boolean.class.equals(wrapperType) && (converter instanceof ToBooleanConverter)) {
+				fieldPopulator = new BooleanFieldPopulator(type, group, converter, setter);
+			} else {
+				fieldPopulator = new FieldPopulator(type, group, converter, setter);
+			}
+			fieldPopulators.add(fieldPopulator);
+			labels.add(field.getName() + " (" + ((converter != null) ? converter.getClass().getSimpleName() : "no converter") + ")");
+		}
+		fields = fieldPopulators.toArray(new FieldPopulator[fieldPopulators.size()]);
+		fieldLabels = labels.toArray(new String[labels.size()]);
+	}
+	
+	private static Converter<?> createConverter(Class<?> entityClass, Class<? extends Converter<?>> converterClass) throws Exception {
+		Constructor<? extends Converter<?>> converterConstructor;
+		try {
+			converterConstructor = converterClass.getDeclaredConstructor();
+		} catch (NoSuchMethodException e) {
+			throw new Exception("In [" + entityClass.getName() + "]: Cannot find a constructor without parameters in [" 
+					+ converterClass.getName() + "]");
+		}
+		converterConstructor.setAccessible(true);
+		try {
+			return converterConstructor.newInstance();
+		} catch (InvocationTargetException e) {
+			throw new Exception("In [" + entityClass.getName() + "]: Cannot create [" + converterClass.getName() + "]", e.getCause());
+		}
+	}
+	
+	/**
+	 * Returns the name and the converter of each populated field, in the populate order.
+	 */
+	public String[] getFieldLabels() {
+		return fieldLabels;
+	}
+
+	/**
+	 * Creates an entity from the match of a line.
+	 * 
+	 * @param text the line
+	 * @param matchResult the match of the line
+	 */
+	public Object populate(CharSequence text, MatchResult matchResult) throws Exception {
+		try {
+			Object entity = (Object) constructor.invokeExact();
+			for (FieldPopulator field : fields) {
+				field.populate(entity, text, matchResult);
+			}
+			
+			return entity;
+		} catch (Exception e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new Exception(t);
+		}
+	}
+	
+	/**
+	 * Creates an entity from the match of a line and counts the conversions and their time (in nanoseconds) 
+	 * of each field, in the order of {@link #getFieldLabels()}.
+	 */
+	public Object populate(CharSequence text, MatchResult matchResult, LongAdder[] conversions, LongAdder[] conversionTimes) throws Exception {
+		try {
+			Object entity = (Object) constructor.invokeExact();
+			for (int i = 0; i < fields.length; i++) {
+				long start = System.nanoTime();
+				fields[i].populate(entity, text, matchResult);
+				conversionTimes[i].add(System.nanoTime() - start);
+				conversions[i].increment();
+			}
+			
+			return entity;
+		} catch (Exception e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new Exception(t);
+		}
+	}
+	
+	/**
+	 * Sets a field with the value decoded from a group of the match.
+	 */
+	static class FieldPopulator {
+		
+		protected Class<?> type;
+		protected int group;
+		protected Converter<?> converter;
+		protected MethodHandle setter;
+		
+		public FieldPopulator(Class<?> type, int group, Converter<?> converter, MethodHandle setter) {
+			this.type = type;
+			this.group = group;
+			this.converter = converter;
+			this.setter = setter.asType(SETTER_TYPE);
+		}
+		
+		public void populate(Object target, CharSequence text, MatchResult matchResult) throws Throwable {
+			populateObject(target, matchResult);
+		}
+		
+		protected void populateObject(Object target, MatchResult matchResult) throws Throwable {
+			String text = matchResult.group(group);
+			Object value;
+			if (String.class.equals(type)) {
+				value = text;
+			} else if (converter != null) {
+				value = converter.decode(text);
+			} else {
+	            throw new RuntimeException("No converter found for target class " + type);
+			}
+			setter.invokeExact(target, value);
+		}
+		
+	}
+	
+	static class IntFieldPopulator extends FieldPopulator {
+		
+		private static final MethodType TYPE = MethodType.methodType(void.class, Object.class, int.class);
+		
+		private ToIntConverter primitiveConverter;
+		private MethodHandle primitiveSetter;
+		
+		public IntFieldPopulator(Class<?> type, int group, Converter<?> converter, MethodHandle setter) {
+			super(type, group, converter, setter);
+			
+			primitiveConverter = (ToIntConverter) converter;
+			primitiveSetter = setter.asType(TYPE);
+		}
+		
+		@Override
+		public void populate(Object target, CharSequence text, MatchResult matchResult) throws Throwable {
+			int start = matchResult.start(group);
+			if (start < 0) {
+				// the group didn't participate in the match, let the converter decide
+				populateObject(target, matchResult);
+			} else {
+				primitiveSetter.invokeExact(target, primitiveConverter.decodeInt(text, start, matchResult.end(group)));
+			}
+		}
+		
+	}
+	
+	static class LongFieldPopulator extends FieldPopulator {
+		
+		private static final MethodType TYPE = MethodType.methodType(void.class, Object.class, long.class);
+		
+		private ToLongConverter primitiveConverter;
+		private MethodHandle primitiveSetter;
+		
+		public LongFieldPopulator(Class<?> type, int group, Converter<?> converter, MethodHandle setter) {
+			super(type, group, converter, setter);
+			
+			primitiveConverter = (ToLongConverter) converter;
+			primitiveSetter = setter.asType(TYPE);
+		}
+		
+		@Override
+		public void populate(Object target, CharSequence text, MatchResult matchResult) throws Throwable {
+			int start = matchResult.start(group);
+			if (start < 0) {
+				populateObject(target, matchResult);
+			} else {
+				primitiveSetter.invokeExact(target, primitiveConverter.decodeLong(text, start, matchResult.end(group)));
+			}
+		}
+		
+	}
+	
+	static class DoubleFieldPopulator extends FieldPopulator {
+		
+		private static final MethodType TYPE = MethodType.methodType(void.class, Object.class, double.class);
+		
+		private ToDoubleConverter primitiveConverter;
+		private MethodHandle primitiveSetter;
+		
+		public DoubleFieldPopulator(Class<?> type, int group, Converter<?> converter, MethodHandle setter) {
+			super(type, group, converter, setter);
+			
+			primitiveConverter = (ToDoubleConverter) converter;
+			primitiveSetter = setter.asType(TYPE);
+		}
+		
+		@Override
+		public void populate(Object target, CharSequence text, MatchResult matchResult) throws Throwable {
+			int start = matchResult.start(group);
+			if (start < 0) {
+				populateObject(target, matchResult);
+			} else {
+				primitiveSetter.invokeExact(target, primitiveConverter.decodeDouble(text, start, matchResult.end(group)));
+			}
+		}
+		
+	}
+	
+	static class BooleanFieldPopulator extends FieldPopulator {
+		
+		private static final MethodType TYPE = MethodType.methodType(void.class, Object.class, boolean.class);
+		
+		private ToBooleanConverter primitiveConverter;
+		private MethodHandle primitiveSetter;
+		
+		public BooleanFieldPopulator(Class<?> type, int group, Converter<?> converter, MethodHandle setter) {
+			super(type, group, converter, setter);
+			
+			primitiveConverter = (ToBooleanConverter) converter;
+			primitiveSetter = setter.asType(TYPE);
+		}
+		
+		@Override
+		public void populate(Object target, CharSequence text, MatchResult matchResult) throws Throwable {
+			int start = matchResult.start(group);
+			if (start < 0) {
+				populateObject(target, matchResult);
+			} else {
+				primitiveSetter.invokeExact(target, primitiveConverter.decodeBoolean(text, start, matchResult.end(group)));
+			}
+		}
+		
+	}
+	
+}
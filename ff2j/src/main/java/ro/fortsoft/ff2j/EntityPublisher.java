@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * A publisher of the mapped entities, driven by the demand of the subscriber. Each subscription pulls the 
+ * entities from its own lazy stream (see {@link FF2J#stream(java.nio.file.Path)}), so only the lines needed 
+ * for the requested entities are read and mapped. The entities are delivered from a task of the executor.
+ * A cancellation closes the stream (and the file).
+ * 
+ * @author Decebal Suiu
+ */
+class EntityPublisher<T> implements Flow.Publisher<T> {
+
+	private Supplier<Stream<T>> streamSupplier;
+	private Executor executor;
+	
+	public EntityPublisher(Supplier<Stream<T>> streamSupplier, Executor executor) {
+		this.streamSupplier = streamSupplier;
+		this.executor = executor;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException();
+		}
+		
+		subscriber.onSubscribe(new EntitySubscription<T>(subscriber, streamSupplier, executor));
+	}
+
+	/**
+	 * The delivery loop runs on the executor, at most one task at a time (the work in progress counter 
+	 * counts the requests and cancellations that arrived while the loop runs).
+	 */
+	static class EntitySubscription<T> implements Flow.Subscription, Runnable, Consumer<T> {
+		
+		private Flow.Subscriber<? super T> subscriber;
+		private Supplier<Stream<T>> streamSupplier;
+		private Executor executor;
+		private AtomicLong demand;
+		private AtomicInteger workInProgress;
+		private volatile boolean cancelled;
+		private volatile Throwable requestError;
+		
+		/** Accessed only from the delivery loop */
+		private Stream<T> stream;
+		private Spliterator<T> spliterator;
+		private boolean done;
+		
+		public EntitySubscription(Flow.Subscriber<? super T> subscriber, Supplier<Stream<T>> streamSupplier, Executor executor) {
+			this.subscriber = subscriber;
+			this.streamSupplier = streamSupplier;
+			this.executor = executor;
+			
+			demand = new AtomicLong();
+			workInProgress = new AtomicInteger();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				requestError = new IllegalArgumentException("The number of requested entities must be positive");
+			} else {
+				long current;
+				long next;
+				do {
+					current = demand.get();
+					next = current + n;
+					if (next < 0) {
+						// unbounded
+						next = Long.MAX_VALUE;
+					}
+				} while (!demand.compareAndSet(current, next));
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+
+		@Override
+		public void accept(T entity) {
+			subscriber.onNext(entity);
+		}
+		
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if (!done) {
+					deliver();
+				}
+				missed = workInProgress.addAndGet(-missed);
+			} while (missed != 0);
+		}
+		
+		private void schedule() {
+			if (workInProgress.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+		}
+		
+		private void deliver() {
+			if (cancelled) {
+				finish();
+				return;
+			}
+			if (requestError != null) {
+				finish();
+				subscriber.onError(requestError);
+				return;
+			}
+			
+			long requested = demand.get();
+			long emitted = 0;
+			try {
+				if (spliterator == null) {
+					stream = streamSupplier.get();
+					spliterator = stream.spliterator();
+				}
+				while ((emitted < requested) && !cancelled) {
+					if (!spliterator.tryAdvance(this)) {
+						finish();
+						subscriber.onComplete();
+						return;
+					}
+					emitted++;
+				}
+			} catch (Throwable t) {
+				finish();
+				subscriber.onError(t);
+				return;
+			}
+			
+			if (cancelled) {
+				finish();
+			} else if ((emitted > 0) && (requested != Long.MAX_VALUE)) {
+				demand.addAndGet(-emitted);
+			}
+		}
+		
+		private void finish() {
+			done = true;
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (RuntimeException e) {
+					// ignore
+				}
+			}
+		}
+		
+	}
+	
+}
@@ -12,17 +12,39 @@
  */
 package ro.fortsoft.ff2j;
 
-import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import ro.fortsoft.ff2j.converter.Converter;
 import ro.fortsoft.ff2j.converter.ConverterRegistry;
@@ -32,19 +54,53 @@ import ro.fortsoft.ff2j.converter.ConverterRegistry;
  */
 public class FF2J {
 
+	/**
+	 * The default size in bytes of a file chunk used by {@link #parse(FileChannel)}.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+	
+	/**
+	 * The default number of entities in a batch delivered to a {@link BatchEntityHandler}.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	
+	/**
+	 * The default max time in milliseconds between two checks of a file followed by {@link #follow(Path)}.
+	 */
+	public static final long DEFAULT_FOLLOW_POLL_INTERVAL = 1000;
+	
     private long skipLines;
 	private Mapper mapper;
+	private ConverterRegistry converterRegistry;
 	private Set<EntityHandler<?>> entityHandlers;
 	private NoEntityHandler noEntityHandler;
 	private ProgressListener progressListener;
-	private Map<Class<?>, EntityHandler<?>> entityHandlersCache;
+	private Map<Class<?>, EntityHandlers> entityHandlersCache;
+	private List<EntityBatch> entityBatches;
 	private Statistics statistics;
 	private Exception error;
+	private int parallelism;
+	private int chunkSize;
+	private Charset charset;
+	private int batchSize;
+	private long batchMaxLatency;
+	private boolean pipelining;
+	private long followPollInterval;
+	private boolean fileLifecycle;
+	private volatile FileFollower follower;
+	private String metricsName;
+	private Metrics metrics;
 	
 	public FF2J() {
-		mapper = new Mapper();
+		converterRegistry = new ConverterRegistry(ConverterRegistry.getInstance());
+		mapper = new Mapper(converterRegistry);
 		entityHandlers = new LinkedHashSet<EntityHandler<?>>();
 		statistics = new Statistics();
+		parallelism = Runtime.getRuntime().availableProcessors();
+		chunkSize = DEFAULT_CHUNK_SIZE;
+		charset = Charset.defaultCharset();
+		batchSize = DEFAULT_BATCH_SIZE;
+		followPollInterval = DEFAULT_FOLLOW_POLL_INTERVAL;
 	}
 	
     /**
@@ -102,53 +158,269 @@ public class FF2J {
 	}
 
 	/**
-	 * Register a custom general converter.
+	 * Register a custom general converter. The converter is used only by this instance.
 	 * 
 	 * @param converter
 	 * @return
 	 */
 	public FF2J registerConverter(Converter<?> converter) {
-		ConverterRegistry.getInstance().register(converter);
+		converterRegistry.register(converter);
+		mapper.bindConverters();
 		
 		return this;
 	}
 
+	/**
+	 * Enables the multi pattern matching. The patterns of all mapped entities are compiled into one 
+	 * automaton, so a line is scanned only once to find the entity that matches, whatever the number
+	 * of mapped entities. A pattern that uses constructs which cannot be compiled to an automaton 
+	 * (back references, look-arounds, possessive quantifiers, ...) is still matched with the match engine 
+	 * (see {@link #setMatchEngine(MatchEngine)}), as any pattern of an engine that doesn't support the automaton.
+	 * 
+	 * @param multiPatternMatching
+	 * @return
+	 */
+	public FF2J setMultiPatternMatching(boolean multiPatternMatching) {
+		mapper.setMultiPatternMatching(multiPatternMatching);
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the engine that matches the lines with the patterns of the regex entities. The default engine 
+	 * is {@link JdkMatchEngine}. Use {@link LinearMatchEngine} when the lines can be hostile: it never 
+	 * backtracks, so the time of a line is bounded by its length, but it rejects the patterns with 
+	 * back references, look-arounds and the other non regular constructs. The patterns of the entities 
+	 * already mapped are compiled again.
+	 * 
+	 * @param matchEngine
+	 * @return
+	 */
+	public FF2J setMatchEngine(MatchEngine matchEngine) {
+		if (matchEngine == null) {
+			throw new IllegalArgumentException("Match engine cannot be null");
+		}
+		mapper.setMatchEngine(matchEngine);
+		
+		return this;
+	}
+	
+	/**
+	 * Enables the adaptive ordering of the entities. While parsing, the hits of each entity are 
+	 * counted and the most frequent entities are tried first, so on a file dominated by one entity 
+	 * type most lines are mapped with one match attempt. The entities are reordered only within 
+	 * the same {@link RegexEntity#priority()}, so use it when a line cannot be matched by two entities 
+	 * with the same priority.
+	 * 
+	 * @param adaptiveOrdering
+	 * @return
+	 */
+	public FF2J setAdaptiveOrdering(boolean adaptiveOrdering) {
+		mapper.setAdaptiveOrdering(adaptiveOrdering);
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the number of threads used by {@link #parse(FileChannel)} and by the pipelined {@link #parse(Reader)}.
+	 * The default value is the number of available processors.
+	 * 
+	 * @param parallelism
+	 * @return
+	 */
+	public FF2J setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be greater than zero");
+		}
+		this.parallelism = parallelism;
+		
+		return this;
+	}
+	
+	/**
+	 * Enables the pipelined mode for {@link #parse(Reader)}. The lines are read by a dedicated thread, 
+	 * mapped by several worker threads (see {@link #setParallelism(int)}) and delivered in order from the calling 
+	 * thread, so reading, mapping and handling overlap. The stages are connected by bounded buffers, 
+	 * so a slow handler slows down the reading instead of filling the memory.
+	 * The handlers, the {@link NoEntityHandler} and the {@link ProgressListener} are called as in the
+	 * default mode (in order, once per line, from the calling thread). The converters must be thread safe.
+	 * The reader thread reads ahead, so when the parsing is stopped the input may be consumed past 
+	 * the last processed line. {@link #parse(Reader)} waits for the reader thread to end, so the input 
+	 * is not used after it returns; if that thread is waiting for the input (a pipe or a socket with 
+	 * no data) the parsing returns when the next line or the end of the input arrives.
+	 * 
+	 * @param pipelining
+	 * @return
+	 */
+	public FF2J setPipelining(boolean pipelining) {
+		this.pipelining = pipelining;
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the approximate size in bytes of a file chunk used by {@link #parse(FileChannel)}. A chunk is always
+	 * extended to the next line end. The default value is {@link #DEFAULT_CHUNK_SIZE}.
+	 * 
+	 * @param chunkSize
+	 * @return
+	 */
+	public FF2J setChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be greater than zero");
+		}
+		this.chunkSize = chunkSize;
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the max number of entities in a batch delivered to a {@link BatchEntityHandler}. 
+	 * The default value is {@link #DEFAULT_BATCH_SIZE}.
+	 * 
+	 * @param batchSize
+	 * @return
+	 */
+	public FF2J setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be greater than zero");
+		}
+		this.batchSize = batchSize;
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the max time in milliseconds that an entity waits in a batch before the batch is delivered 
+	 * to a {@link BatchEntityHandler}, even if it's not full. The time is checked when the lines are processed.
+	 * The default value is 0 (no limit, a batch is delivered when it's full or at the end of parsing).
+	 * 
+	 * @param batchMaxLatency
+	 * @return
+	 */
+	public FF2J setBatchMaxLatency(long batchMaxLatency) {
+		if (batchMaxLatency < 0) {
+			throw new IllegalArgumentException("Batch max latency must be positive");
+		}
+		this.batchMaxLatency = batchMaxLatency;
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the lifecycle of the handlers for {@link #parse(Collection)}. If true the handlers are started 
+	 * ({@link EntityHandler#beforeFirstEntity()}) before each file and ended ({@link EntityHandler#afterLastEntity()}, 
+	 * after the last batch) after each file. If false (the default value) the handlers are started once before 
+	 * the first file and ended once after the last file.
+	 * <p>
+	 * With the file lifecycle and an {@link UnorderedEntityHandler}, the chunks of a file are mapped only after 
+	 * the file was started, so an unordered handler never receives the entities of a file before its 
+	 * beforeFirstEntity() or after its afterLastEntity(). The next file is not mapped while the current file 
+	 * is delivered, so there is less parallelism between the files.
+	 * 
+	 * @param fileLifecycle
+	 * @return
+	 */
+	public FF2J setFileLifecycle(boolean fileLifecycle) {
+		this.fileLifecycle = fileLifecycle;
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the max time in milliseconds between two checks of a file followed by {@link #follow(Path)}, 
+	 * when the file system doesn't signal a change. The default value is {@link #DEFAULT_FOLLOW_POLL_INTERVAL}.
+	 * 
+	 * @param followPollInterval
+	 * @return
+	 */
+	public FF2J setFollowPollInterval(long followPollInterval) {
+		if (followPollInterval < 1) {
+			throw new IllegalArgumentException("Follow poll interval must be greater than zero");
+		}
+		this.followPollInterval = followPollInterval;
+		
+		return this;
+	}
+	
+	/**
+	 * Sets the charset used to decode the lines of a file. The charset must encode the line feed character 
+	 * as a single byte (UTF-8, ISO-8859-1, ...). The default value is the platform's default charset.
+	 * For ISO-8859-1, and for the ASCII lines of an US-ASCII or UTF-8 file, the lines are mapped 
+	 * directly from the file's bytes, without decoding.
+	 * 
+	 * @param charset
+	 * @return
+	 */
+	public FF2J setCharset(Charset charset) {
+		this.charset = charset;
+		
+		return this;
+	}
+	
+	/**
+	 * Enables the metrics of the next parsings: the lines and characters per second, the match attempts, hits and time 
+	 * of each entity, the conversion time of each field and the latency of each handler (see {@link Metrics}).
+	 * While a parsing runs its metrics are published in the platform MBean server with the name 
+	 * <code>ro.fortsoft.ff2j:type=Metrics,name="&lt;name&gt;"</code>. The streams and the publishers are not measured.
+	 * The metrics cost two time measurements per regex match and per field, so they are disabled by default.
+	 * 
+	 * @param name the name of the metrics, null disables the metrics
+	 * @return
+	 */
+	public FF2J setMetrics(String name) {
+		this.metricsName = name;
+		
+		return this;
+	}
+	
+	/**
+	 * Returns the metrics of the current or the last parsing, or null if the metrics are disabled.
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+	
 	public Exception getError() {
 		return error;
 	}
 
 	/**
      * Process each line of the file and call an entity handler if that line can be mapped to an entity.
+     * The lines are read into a reusable buffer and the matchers are reused, so a line that is not 
+     * mapped to an entity allocates nothing (unless there is a {@link NoEntityHandler}).
+     * See {@link #setPipelining(boolean)} for the pipelined mode.
      *
      * @param input will not be closed by the reader
      */
     public Statistics parse(Reader input) {    	
-    	// pre parse    	
-    	createEntityHandlersCache();
-    	for (EntityHandler<?> entityHandler : entityHandlers) {
-    		entityHandler.beforeFirstEntity();
-    	}    	
-    	if (progressListener != null) {
-    		progressListener.started();
+    	if (pipelining) {
+    		return parsePipelined(input);
     	}
-
-    	statistics.startTime = System.currentTimeMillis();
+    	
+    	// pre parse    	
+    	beforeParse();
     			
     	// parse
     	boolean success = true;
-        BufferedReader reader = new BufferedReader(input);
-        String lineText = null;
+        LineReader reader = new LineReader(input);
+        MappingContext context = mapper.createContext();
+        CharSequence lineText = null;
         long lineNumber = 0;
         try {
 	        while ((lineText = reader.readLine()) != null) {
 	        	lineNumber++;
+	        	statistics.setProcessedLineNumber(lineNumber);
 	        	if (lineNumber > skipLines) {
 	        		boolean goNext = true;
 	        		if (progressListener != null) {
 	        			goNext = progressListener.inProgress(lineNumber);
 	        		}
 	        		if (goNext) {
-	        			goNext = onFileLine(lineNumber, lineText);
+	        			goNext = onFileLine(lineNumber, lineText, context);
+	        		}
+	        		if (batchMaxLatency > 0) {
+	        			flushExpiredBatches();
 	        		}
 	        		
 	        		if (!goNext) {
@@ -163,64 +435,751 @@ public class FF2J {
         }
         
         // post parse
+        afterParse(lineNumber, success);
+    	
+    	return statistics;
+	}
+    
+    private Statistics parsePipelined(Reader input) {
+    	// pre parse
+    	beforeParse();
+    	
+    	// parse
+    	PipelinedParser parser = new PipelinedParser(this, input);
+    	boolean success;
+    	try {
+    		success = parser.parse();
+    	} catch (Exception e) {
+    		success = false;
+    		error = e;
+    	}
+    	
+    	// post parse
+    	afterParse(parser.getLineNumber(), success);
+    	
+    	return statistics;
+    }
+    
+    /**
+     * Process each line of the file and call an entity handler if that line can be mapped to an entity.
+     * See {@link #parse(FileChannel)} for details.
+     *
+     * @param path the file to parse
+     */
+    public Statistics parse(Path path) {
+    	FileChannel channel;
+    	try {
+    		channel = FileChannel.open(path, StandardOpenOption.READ);
+    	} catch (IOException e) {
+    		error = e;
+    		return statistics;
+    	}
+    	
+    	try {
+    		return parse(channel);
+    	} finally {
+    		try {
+    			channel.close();
+    		} catch (IOException e) {
+    			// ignore
+    		}
+    	}
+    }
+    
+    /**
+     * Process each line of the file and call an entity handler if that line can be mapped to an entity.
+     * The file is cut in chunks (see {@link #setChunkSize(int)}) on line boundaries and the chunks are mapped 
+     * in parallel (see {@link #setParallelism(int)}). 
+     * <p>
+     * The entities are delivered to an {@link EntityHandler} in file order, from the calling thread.
+     * An {@link UnorderedEntityHandler} receives the entities as soon as they are mapped, from the worker threads.
+     * The {@link NoEntityHandler} is always called in file order, with the right line number.
+     * The {@link ProgressListener} is called once per chunk, with the last line number of that chunk.
+     * <p>
+     * The converters used by the mapped entities must be thread safe.
+     * <p>
+     * A gzip compressed file is detected and decompressed in parallel: the members of a multi member file 
+     * (BGZF or concatenated gzip files) are inflated on {@link #setParallelism(int) parallelism} threads, 
+     * a single member is inflated by a read-ahead thread. The inflated lines are parsed as by {@link #parse(Reader)}, 
+     * so enable {@link #setPipelining(boolean)} to map them in parallel. The statistics have no offsets.
+     *
+     * @param channel will not be closed by the parser
+     */
+    public Statistics parse(FileChannel channel) {
+    	return parse(channel, null);
+    }
+    
+    /**
+     * Resumes the parsing of a file from a checkpoint. The file is read directly from the checkpoint's offset,
+     * the lines before it are not read. The line numbers continue from the checkpoint's line number.
+     * If the checkpoint doesn't match the file (see {@link Checkpoint#matches(Path)}) the file is not 
+     * parsed and the error is a {@link CheckpointException}.
+     * See {@link #parse(FileChannel)} for details.
+     * 
+     * @param path the file to parse
+     * @param checkpoint created from the statistics of a previous parsing, see {@link Checkpoint#create(Path, Statistics)}
+     */
+    public Statistics parse(Path path, Checkpoint checkpoint) {
+    	FileChannel channel;
+    	try {
+    		channel = FileChannel.open(path, StandardOpenOption.READ);
+    	} catch (IOException e) {
+    		error = e;
+    		return statistics;
+    	}
+    	
+    	try {
+    		if (GzipDecoder.isGzip(channel)) {
+    			error = new CheckpointException("A compressed file cannot be resumed from a checkpoint");
+    			return statistics;
+    		}
+    		String mismatch = checkpoint.verify(path, channel);
+    		if (mismatch != null) {
+    			error = new CheckpointException(mismatch);
+    			return statistics;
+    		}
+    		
+    		return parse(channel, checkpoint);
+    	} catch (IOException e) {
+    		error = e;
+    		return statistics;
+    	} finally {
+    		try {
+    			channel.close();
+    		} catch (IOException e) {
+    			// ignore
+    		}
+    	}
+    }
+    
+    private Statistics parse(FileChannel channel, Checkpoint checkpoint) {
+    	try {
+    		if ((checkpoint == null) && GzipDecoder.isGzip(channel)) {
+    			return parseGzip(channel);
+    		}
+    	} catch (IOException e) {
+    		error = e;
+    		return statistics;
+    	}
+    	
+    	// pre parse
+    	beforeParse();
+    	
+    	// parse
+    	ChunkedFileParser parser = new ChunkedFileParser(this, channel);
+    	boolean success;
+    	try {
+    		long position;
+    		long lineNumber;
+    		if (checkpoint != null) {
+    			position = checkpoint.getOffset();
+    			lineNumber = checkpoint.getLineNumber();
+    			statistics.startLineNumber = lineNumber;
+    		} else {
+    			position = parser.skipLines(skipLines, channel.size());
+    			lineNumber = parser.getLineNumber();
+    		}
+    		statistics.startOffset = position;
+    		success = parser.parse(position, lineNumber);
+    	} catch (Exception e) {
+    		success = false;
+    		error = e;
+    	}
+    	
+    	// post parse
+    	statistics.endOffset = parser.getOffset();
+    	afterParse(parser.getLineNumber(), success);
+    	
+    	return statistics;
+    }
+    
+    private Statistics parseGzip(FileChannel channel) throws IOException {
+    	ParallelGzipInputStream input = new ParallelGzipInputStream(channel, parallelism);
+    	try {
+    		return parse(new InputStreamReader(input, charset));
+    	} finally {
+    		input.close();
+    	}
+    }
+    
+    /**
+     * Parses the files of a directory whose names match a glob pattern (for example <code>"winstone.log*"</code>), 
+     * in the order of their names. See {@link #parse(Collection)} for details.
+     * 
+     * @param directory
+     * @param glob the syntax is described by {@link java.nio.file.FileSystem#getPathMatcher(String)}
+     */
+    public Statistics parse(Path directory, String glob) {
+    	List<Path> files = new ArrayList<Path>();
+    	try {
+    		DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob);
+    		try {
+    			for (Path file : stream) {
+    				if (Files.isRegularFile(file)) {
+    					files.add(file);
+    				}
+    			}
+    		} finally {
+    			stream.close();
+    		}
+    	} catch (IOException e) {
+    		error = e;
+    		return statistics;
+    	}
+    	Collections.sort(files);
+    	
+    	return parse(files);
+    }
+    
+    /**
+     * Parses several files with the same mapping. The files are cut in chunks and the chunks of the current file 
+     * and of the next files are mapped in parallel (see {@link #setParallelism(int)}), so many small files 
+     * keep all cores busy. The entities are delivered file after file, in file order, from the calling thread.
+     * {@link #skipLines(long)} is applied to each file and the compressed files are detected 
+     * (see {@link #parse(FileChannel)}).
+     * <p>
+     * The returned statistics merge all files, the line numbers count the lines of all files. 
+     * The statistics of each file are available with {@link Statistics#getFileStatistics()}, 
+     * they can be used to create a {@link Checkpoint} for each file.
+     * The handlers are started and ended once or for each file, see {@link #setFileLifecycle(boolean)}
+     * (the unordered handlers receive the entities as soon as they are mapped, so the entities of the next 
+     * files may reach them before the current file ends, unless the file lifecycle is used).
+     * The parsing stops at the first error.
+     * 
+     * @param files
+     */
+    public Statistics parse(Collection<Path> files) {
+    	// pre parse
+    	beforeParse(!fileLifecycle);
+    	statistics.startLineNumber = 0;
+    	
+    	// parse
+    	MultiFileParser parser = new MultiFileParser(this, new ArrayList<Path>(files), fileLifecycle);
+    	boolean success;
+    	try {
+    		success = parser.parse();
+    	} catch (Exception e) {
+    		success = false;
+    		error = e;
+    	}
+    	
+    	// post parse
+    	statistics.fileStatistics.putAll(parser.getFileStatistics());
+    	afterParse(parser.getLineCount(), success, !fileLifecycle);
+    	
+    	return statistics;
+    }
+    
+    /**
+     * Follows a growing file (like <code>tail -F</code>) and calls an entity handler for each appended line 
+     * that can be mapped to an entity. The method blocks until the following is stopped with {@link #stopFollowing()}, 
+     * by an interruption of the calling thread, by a {@link ProgressListener} or by a {@link NoEntityHandler}.
+     * <p>
+     * The file is read from the beginning (see {@link #skipLines(long)}) and then only the appended bytes are read.
+     * A line is processed when its line separator was written. When the end of the file is reached FF2J waits 
+     * for a change of the file (signaled by the file system) or for the poll interval (see {@link #setFollowPollInterval(long)}),
+     * so an idle file costs nothing. A truncated file (the size is less than the number of bytes already read) and a rotated file 
+     * (the path points to a new file) are detected, the rest of the old file is processed and the new file is read 
+     * from the beginning. The line numbers restart from 1 for the new file.
+     * <p>
+     * Use {@link #setBatchMaxLatency(long)} with a {@link BatchEntityHandler}, otherwise a batch is delivered only 
+     * when it's full.
+     * 
+     * @param path the file to follow, it may not exist yet
+     */
+    public Statistics follow(Path path) {
+    	// published first, so a stop requested while the handlers are started is not lost
+    	FileFollower follower = new FileFollower(this, path, followPollInterval);
+    	this.follower = follower;
+    	boolean success;
+    	try {
+    		// pre parse
+    		beforeParse();
+    		
+    		// follow
+    		try {
+    			success = follower.follow();
+    		} catch (Exception e) {
+    			success = false;
+    			error = e;
+    		}
+    	} finally {
+    		this.follower = null;
+    	}
+    	
+    	// post parse
+    	statistics.endOffset = follower.getOffset();
+    	afterParse(follower.getLineNumber(), success);
+    	
+    	return statistics;
+    }
+    
+    /**
+     * Stops a running {@link #follow(Path)}. Can be called from any thread, for example from a shutdown hook.
+     * A stop requested while {@link #follow(Path)} starts is honored: the following ends before reading the file.
+     */
+    public void stopFollowing() {
+    	FileFollower follower = this.follower;
+    	if (follower != null) {
+    		follower.stop();
+    	}
+    }
+    
+    /**
+     * Returns a lazy stream over the entities mapped from the lines of the file. The lines are read only when 
+     * the entities are requested, so <code>limit()</code> or <code>findFirst()</code> stop reading the file early.
+     * A parallel stream is split at line boundaries and maps the file on all cores. 
+     * The handlers, the listener and the statistics are not used. 
+     * <p>
+     * A gzip compressed file is detected and decompressed as by {@link #parse(FileChannel)}; its lines are 
+     * read and mapped in order, a parallel stream doesn't split them at line boundaries.
+     * <p>
+     * The file is closed when the stream is closed, so use the stream in a try-with-resources statement.
+     * 
+     * @param path the file to parse
+     * @throws UncheckedIOException if the file cannot be opened
+     */
+    public Stream<Object> stream(Path path) {
+    	final FileChannel channel;
+    	try {
+    		channel = FileChannel.open(path, StandardOpenOption.READ);
+    	} catch (IOException e) {
+    		throw new UncheckedIOException(e);
+    	}
+    	
+    	Spliterator<Object> spliterator;
+    	final ParallelGzipInputStream gzipInput;
+    	try {
+    		if (GzipDecoder.isGzip(channel)) {
+    			gzipInput = new ParallelGzipInputStream(channel, parallelism);
+    			spliterator = new ReaderEntitySpliterator(this, new InputStreamReader(gzipInput, charset));
+    		} else {
+    			gzipInput = null;
+    			long size = channel.size();
+    			long start = new ChunkedFileParser(this, channel).skipLines(skipLines, size);
+    			spliterator = new FileEntitySpliterator(this, channel, start, size);
+    		}
+    	} catch (IOException e) {
+    		// the stream is not returned, so the channel is not closed by it
+    		try {
+    			channel.close();
+    		} catch (IOException closeException) {
+    			e.addSuppressed(closeException);
+    		}
+    		throw new UncheckedIOException(e);
+    	}
+    	
+    	Stream<Object> stream = StreamSupport.stream(spliterator, false);
+    	
+    	return stream.onClose(new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					if (gzipInput != null) {
+						gzipInput.close();
+					}
+					channel.close();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			
+		});
+    }
+    
+    /**
+     * Returns a lazy stream over the entities of the given type mapped from the lines of the file.
+     * See {@link #stream(Path)} for details.
+     */
+    public <T> Stream<T> stream(Path path, Class<T> entityClass) {
+    	return filter(stream(path), entityClass);
+    }
+    
+    /**
+     * Returns a lazy stream over the entities of the given type mapped from the lines read from the input.
+     * The lines are read only when the entities are requested. The handlers, the listener 
+     * and the statistics are not used.
+     * 
+     * @param input will not be closed
+     */
+    public <T> Stream<T> stream(Reader input, Class<T> entityClass) {
+    	return filter(StreamSupport.stream(new ReaderEntitySpliterator(this, input), false), entityClass);
+    }
+    
+    /**
+     * Creates a mapper of single lines, with the mapped entities and the matching settings of this instance 
+     * (multi pattern matching, adaptive ordering, match engine). The handlers, the listener and the statistics 
+     * are not used. The line mapper is not thread safe, create one per thread.
+     */
+    public LineMapper createLineMapper() {
+    	return new LineMapper(mapper);
+    }
+    
+    /**
+     * Returns a publisher of the entities mapped from the lines of the file. The file is read as the subscriber 
+     * requests entities, so a slow subscriber slows down the reading instead of buffering the entities. 
+     * Each subscriber reads the file on its own. The entities are delivered from the common fork-join pool.
+     * A cancellation closes the file. A gzip compressed file is decompressed (see {@link #stream(Path)}).
+     * 
+     * @param path the file to parse
+     */
+    public Flow.Publisher<Object> publisher(Path path) {
+    	return publisher(path, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * See {@link #publisher(Path)} for details.
+     * 
+     * @param path the file to parse
+     * @param executor delivers the entities to the subscribers
+     */
+    public Flow.Publisher<Object> publisher(final Path path, Executor executor) {
+    	return new EntityPublisher<Object>(new Supplier<Stream<Object>>() {
+
+			@Override
+			public Stream<Object> get() {
+				return stream(path);
+			}
+    		
+		}, executor);
+    }
+    
+    /**
+     * Returns a publisher of the entities of the given type mapped from the lines of the file.
+     * See {@link #publisher(Path)} for details.
+     */
+    public <T> Flow.Publisher<T> publisher(Path path, Class<T> entityClass) {
+    	return publisher(path, entityClass, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * See {@link #publisher(Path, Class)} for details.
+     */
+    public <T> Flow.Publisher<T> publisher(final Path path, final Class<T> entityClass, Executor executor) {
+    	return new EntityPublisher<T>(new Supplier<Stream<T>>() {
+
+			@Override
+			public Stream<T> get() {
+				return stream(path, entityClass);
+			}
+    		
+		}, executor);
+    }
+    
+    /**
+     * Returns a publisher of the entities of the given type mapped from the lines read from the input.
+     * The input is read as the subscriber requests entities. Only one subscriber is accepted, 
+     * the next ones receive an <code>IllegalStateException</code>.
+     * 
+     * @param input will not be closed
+     */
+    public <T> Flow.Publisher<T> publisher(Reader input, Class<T> entityClass) {
+    	return publisher(input, entityClass, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * See {@link #publisher(Reader, Class)} for details.
+     */
+    public <T> Flow.Publisher<T> publisher(final Reader input, final Class<T> entityClass, Executor executor) {
+    	final AtomicBoolean subscribed = new AtomicBoolean();
+    	
+    	return new EntityPublisher<T>(new Supplier<Stream<T>>() {
+
+			@Override
+			public Stream<T> get() {
+				if (!subscribed.compareAndSet(false, true)) {
+					throw new IllegalStateException("The input can be read by only one subscriber");
+				}
+				
+				return stream(input, entityClass);
+			}
+    		
+		}, executor);
+    }
+    
+    long getSkipLines() {
+    	return skipLines;
+    }
+    
+    int getParallelism() {
+    	return parallelism;
+    }
+    
+    int getChunkSize() {
+    	return chunkSize;
+    }
+    
+    Charset getCharset() {
+    	return charset;
+    }
+    
+    Mapper getMapper() {
+    	return mapper;
+    }
+    
+    ProgressListener getProgressListener() {
+    	return progressListener;
+    }
+    
+    NoEntityHandler getNoEntityHandler() {
+    	return noEntityHandler;
+    }
+    
+    /**
+     * Returns the statistics of the current or the last parsing. The statistics are updated while 
+     * the parsing runs, use {@link Statistics#snapshot()} to read them from another thread.
+     */
+    public Statistics getStatistics() {
+    	return statistics;
+    }
+    
+    EntityHandlers getEntityHandlers(Class<?> entityClass) {
+    	return entityHandlersCache.get(entityClass);
+    }
+    
+    /**
+     * Returns true if at least one of the handlers is an {@link UnorderedEntityHandler}.
+     */
+    boolean hasUnorderedHandlers() {
+    	for (EntityHandlers handlers : entityHandlersCache.values()) {
+    		if (handlers.hasUnordered()) {
+    			return true;
+    		}
+    	}
+    	
+    	return false;
+    }
+    
+    long getBatchMaxLatency() {
+    	return batchMaxLatency;
+    }
+    
+    /**
+     * Delivers an entity to all its handlers, directly or in a batch.
+     */
+    void handleEntity(Object entity) {
+    	EntityHandlers handlers = entityHandlersCache.get(entity.getClass());
+    	if (handlers != null) {
+    		handlers.handleOrdered(entity);
+    		handlers.handleUnordered(entity);
+    		statistics.incrementCounter(handlers.getSlot());
+    	}
+    }
+    
+    /**
+     * Delivers an entity to its ordered handlers (the unordered handlers received it from a worker thread).
+     */
+    void handleOrderedEntity(Object entity) {
+    	EntityHandlers handlers = entityHandlersCache.get(entity.getClass());
+    	handlers.handleOrdered(entity);
+    	statistics.incrementCounter(handlers.getSlot());
+    }
+    
+    /**
+     * Delivers the batches whose first entity waited more than the batch max latency.
+     */
+    void flushExpiredBatches() {
+    	if (!entityBatches.isEmpty()) {
+    		long now = System.nanoTime();
+    		for (EntityBatch entityBatch : entityBatches) {
+    			entityBatch.flushIfExpired(now);
+    		}
+    	}
+    }
+        
+    private void beforeParse() {
+    	beforeParse(true);
+    }
+    
+    /**
+     * @param handlersLifecycle if false the handlers are started for each file, see {@link #setFileLifecycle(boolean)}
+     */
+    private void beforeParse(boolean handlersLifecycle) {
+    	statistics.startLineNumber = skipLines;
+    	statistics.startOffset = -1;
+    	statistics.endOffset = -1;
+    	statistics.endTime = 0;
+    	statistics.setProcessedLineNumber(0);
+    	statistics.fileStatistics.clear();
+    	metrics = (metricsName != null) ? new Metrics(metricsName, mapper.getEntitiesMetaData()) : null;
+    	mapper.setMetrics(metrics);
+    	createEntityHandlersCache();
+    	if (handlersLifecycle) {
+    		beforeFirstEntity();
+    	}
+    	if (progressListener != null) {
+    		progressListener.started();
+    	}
+
+    	statistics.startTime = System.currentTimeMillis();
+    	if (metrics != null) {
+    		metrics.register();
+    	}
+    }
+    
+    private void afterParse(long lineNumber, boolean success) {
+    	afterParse(lineNumber, success, true);
+    }
+    
+    private void afterParse(long lineNumber, boolean success, boolean handlersLifecycle) {
+    	// deliver the last batches
+    	if (handlersLifecycle && !flushBatches()) {
+    		success = false;
+    	}
+    	
         statistics.endLineNumber = lineNumber;
+        statistics.setProcessedLineNumber(lineNumber);
         statistics.endTime = System.currentTimeMillis();
-    	for (EntityHandler<?> entityHandler : entityHandlers) {
-    		entityHandler.afterLastEntity();
-    	}
+        if (handlersLifecycle && !endHandlers()) {
+        	success = false;
+        }
     	if (progressListener != null) {
     		progressListener.ended(success);
     	}
+    	if (metrics != null) {
+    		mapper.setMetrics(null);
+    		metrics.unregister();
+    	}
+    }
+    
+    void beforeFirstEntity() {
+    	for (EntityHandler<?> entityHandler : entityHandlers) {
+    		entityHandler.beforeFirstEntity();
+    	}    	
+    }
+    
+    /**
+     * Delivers the last batches and ends the handlers. Returns false if the delivery of a batch failed.
+     */
+    boolean afterLastEntity() {
+    	boolean success = flushBatches();
+    	if (!endHandlers()) {
+    		success = false;
+    	}
     	
-    	return statistics;
-	}
+    	return success;
+    }
     
-    @SuppressWarnings({ "rawtypes", "unchecked" })
-	private boolean onFileLine(long lineNumber, String lineText) throws Exception {
-    	Object entity = mapper.mapEntity(lineText);
-    	if (entity != null) {
-    		EntityHandler entityHandler = entityHandlersCache.get(entity.getClass());
-    		if (entityHandler != null) {
-    			entityHandler.handleEntity(entity);
-    			statistics.incrementCounter(entity.getClass());
+    /**
+     * Ends all handlers, even if one of them fails. Returns false if a handler failed (the first failure is the error).
+     */
+    private boolean endHandlers() {
+    	boolean success = true;
+    	for (EntityHandler<?> entityHandler : entityHandlers) {
+    		try {
+    			entityHandler.afterLastEntity();
+    		} catch (RuntimeException e) {
+    			if (error == null) {
+    				error = e;
+    			}
+    			success = false;
     		}
+    	}
+    	
+    	return success;
+    }
+    
+    private boolean flushBatches() {
+    	try {
+	    	for (EntityBatch entityBatch : entityBatches) {
+	    		entityBatch.flush();
+	    	}
+    	} catch (Exception e) {
+    		if (error == null) {
+    			error = e;
+    		}
+    		return false;
+    	}
+    	
+    	return true;
+    }
+    
+    private <T> Stream<T> filter(Stream<Object> stream, Class<T> entityClass) {
+    	return stream.filter(entityClass::isInstance).map(entityClass::cast);
+    }
+    
+	boolean onFileLine(long lineNumber, CharSequence lineText, MappingContext context) throws Exception {
+    	Object entity = mapper.mapEntity(lineText, context);
+    	if (entity != null) {
+    		handleEntity(entity);
     	} else if (noEntityHandler != null) {
-    		return noEntityHandler.handleNoEntity(lineNumber, lineText);
+    		return noEntityHandler.handleNoEntity(lineNumber, lineText.toString());
     	}
     	
     	return true;
     }
 
     private void createEntityHandlersCache() {
-		entityHandlersCache = new HashMap<Class<?>, EntityHandler<?>>();
+		entityHandlersCache = new HashMap<Class<?>, EntityHandlers>();
+		entityBatches = new ArrayList<EntityBatch>();
+		List<Class<?>> entityClasses = new ArrayList<Class<?>>();
     	for (EntityHandler<?> entityHandler : entityHandlers) {
-    		ParameterizedType type = null;
-    		Type[] interfaces = entityHandler.getClass().getGenericInterfaces();
-    		if (interfaces.length > 0) {
-    			type = (ParameterizedType) interfaces[0];
+			Class<?> entityClass = getEntityClass(entityHandler);
+			EntityHandlers handlers = entityHandlersCache.get(entityClass);
+			if (handlers == null) {
+				// the entities of a class are counted in the statistics slot of their handlers
+				handlers = new EntityHandlers(entityClasses.size());
+		   		entityHandlersCache.put(entityClass, handlers);
+		   		entityClasses.add(entityClass);
+			}
+			
+			// the handler is classified before it is wrapped by the metrics
+			EntityHandler<?> deliveryHandler = (metrics != null) ? metrics.timeHandler(entityHandler) : entityHandler;
+    		if (entityHandler instanceof BatchEntityHandler) {
+    			EntityBatch entityBatch = new EntityBatch((BatchEntityHandler<?>) deliveryHandler, batchSize, batchMaxLatency);
+    			entityBatches.add(entityBatch);
+    			handlers.addBatch(entityBatch);
+    		} else if (entityHandler instanceof UnorderedEntityHandler) {
+    			handlers.addUnordered(deliveryHandler);
     		} else {
-    			type = (ParameterizedType) entityHandler.getClass().getGenericSuperclass();
+    			handlers.addOrdered(deliveryHandler);
     		}
-			Class<?> entityClass = (Class<?>) type.getActualTypeArguments()[0];
-	   		entityHandlersCache.put(entityClass, entityHandler);
     	}
+    	statistics.resetCounters(entityClasses);
+    }
+    
+    private Class<?> getEntityClass(EntityHandler<?> entityHandler) {
+    	if (entityHandler instanceof AsyncEntityHandler) {
+    		return getEntityClass(((AsyncEntityHandler<?>) entityHandler).getEntityHandler());
+    	}
+    	
+		ParameterizedType type = null;
+		Type[] interfaces = entityHandler.getClass().getGenericInterfaces();
+		if (interfaces.length > 0) {
+			type = (ParameterizedType) interfaces[0];
+		} else {
+			type = (ParameterizedType) entityHandler.getClass().getGenericSuperclass();
+		}
+		
+		return (Class<?>) type.getActualTypeArguments()[0];
     }
     
     /**
      * A holder class for FF2J's statistics.
      */
-    public class Statistics implements Serializable {
+    public static class Statistics implements Serializable {
     	
     	private static final long serialVersionUID = 1L;
     	
-		long startLineNumber;
-    	long endLineNumber;
-    	long startTime;
-    	long endTime;
-    	Map<Class<?>, Long> entitiesCounter;
+		volatile long startLineNumber;
+    	volatile long endLineNumber;
+    	volatile long startOffset;
+    	volatile long endOffset;
+    	volatile long startTime;
+    	volatile long endTime;
+    	/** The number of the last processed line, updated while the parsing runs */
+    	final AtomicLong processedLineNumber;
+    	/** The entities counter of each slot, replaced as a whole */
+    	volatile EntityCounter[] entityCounters;
+    	Map<String, Statistics> fileStatistics;
     	
     	public Statistics() {
-    		entitiesCounter = new LinkedHashMap<Class<?>, Long>();
+    		entityCounters = new EntityCounter[0];
+    		processedLineNumber = new AtomicLong();
+    		fileStatistics = Collections.synchronizedMap(new LinkedHashMap<String, Statistics>());
+    		startOffset = -1;
+    		endOffset = -1;
     	}
     	
 		public long getStartLineNumber() {
@@ -230,6 +1189,26 @@ public class FF2J {
 		public long getEndLineNumber() {
 			return endLineNumber;
 		}
+		
+		/**
+		 * Returns the position in file of the first parsed line, or -1 if the input was not a file.
+		 * 
+		 * @return
+		 */
+		public long getStartOffset() {
+			return startOffset;
+		}
+		
+		/**
+		 * Returns the position in file after the last processed line (the line with the number 
+		 * {@link #getEndLineNumber()}), or -1 if the input was not a file. Use it to create 
+		 * a {@link Checkpoint}.
+		 * 
+		 * @return
+		 */
+		public long getEndOffset() {
+			return endOffset;
+		}
     	
 		/**
 		 *  Returns elapsed miliseconds.
@@ -240,9 +1219,74 @@ public class FF2J {
 			return endTime - startTime;
 		}
 
+		/**
+		 * Returns the number of entities of each type delivered to the handlers (only the types 
+		 * with at least one entity). The map is a copy, built from the live counters.
+		 * 
+		 * @return
+		 */
 		public Map<Class<?>, Long> getEntitiesCounter() {
+			Map<Class<?>, Long> entitiesCounter = new LinkedHashMap<Class<?>, Long>();
+			for (EntityCounter entityCounter : entityCounters) {
+				long count = entityCounter.count.sum();
+				if (count > 0) {
+					entitiesCounter.put(entityCounter.entityClass, count);
+				}
+			}
+			
 			return entitiesCounter;
 		}
+		
+		/**
+		 * Returns a copy of these statistics that doesn't change while the parsing runs, for a dashboard 
+		 * that polls the statistics of a running parsing (see {@link FF2J#getStatistics()}). While the parsing 
+		 * runs, the end line number is the last processed line, the end offset is -1 and the elapsed time 
+		 * is measured until now.
+		 * <p>
+		 * No lock is taken, so the parsing is not slowed down. Each value is exact when it is read and doesn't 
+		 * decrease from a snapshot to the next one, but the values are not read at the same instant: the line number 
+		 * is read first, so the entity counters may include entities of lines after it (the entities delivered 
+		 * while the snapshot is taken and, with an {@link UnorderedEntityHandler}, the entities of the chunks 
+		 * mapped ahead).
+		 * 
+		 * @return
+		 */
+		public Statistics snapshot() {
+			Statistics snapshot = new Statistics();
+			snapshot.startLineNumber = startLineNumber;
+			snapshot.startOffset = startOffset;
+			snapshot.startTime = startTime;
+			long endTime = this.endTime;
+			if (endTime != 0) {
+				snapshot.endLineNumber = endLineNumber;
+				snapshot.endOffset = endOffset;
+				snapshot.endTime = endTime;
+			} else {
+				snapshot.endLineNumber = Math.max(startLineNumber, processedLineNumber.get());
+				snapshot.endTime = System.currentTimeMillis();
+			}
+			EntityCounter[] entityCounters = this.entityCounters;
+			EntityCounter[] snapshotCounters = new EntityCounter[entityCounters.length];
+			for (int i = 0; i < entityCounters.length; i++) {
+				snapshotCounters[i] = new EntityCounter(entityCounters[i].entityClass, entityCounters[i].count.sum());
+			}
+			snapshot.entityCounters = snapshotCounters;
+			synchronized (fileStatistics) {
+				snapshot.fileStatistics.putAll(fileStatistics);
+			}
+			
+			return snapshot;
+		}
+		
+		/**
+		 * Returns the statistics of each file (by path) parsed by {@link FF2J#parse(Collection)}, 
+		 * in parsing order. Empty for the other parse methods.
+		 * 
+		 * @return
+		 */
+		public Map<String, Statistics> getFileStatistics() {
+			return fileStatistics;
+		}
 
 		/**
 		 * Returns elapsed milliseconds as sting in format HH:mm:ss.SSS.
@@ -269,20 +1313,96 @@ public class FF2J {
 			StringBuffer sb = new StringBuffer("FF2J Statistics:\n");
 			sb.append("\t" + "startLineNumber = " + getStartLineNumber() + "\n");
 			sb.append("\t" + "endLineNumber = " + getEndLineNumber() + "\n");
+			if (getEndOffset() >= 0) {
+				sb.append("\t" + "endOffset = " + getEndOffset() + "\n");
+			}
 			sb.append("\t" + "elapsedTime = " + getElapsedTimeString() + "\n");
 			sb.append("\t" + "entitiesCounter = " + getEntitiesCounter());
+			if (!fileStatistics.isEmpty()) {
+				sb.append("\n\t" + "files = " + fileStatistics.size());
+			}
 			
 			return sb.toString();
 		}		
 		
-		void incrementCounter(Class<?> enityClass) {
-			Long counter = entitiesCounter.get(enityClass);
-			if (counter == null) {
-				counter = 1L;
-			} else {
-				counter = Long.valueOf(counter.longValue() + 1);
+		/**
+		 * Counts the given entity classes, each in its slot. The counts of the classes counted 
+		 * before are kept.
+		 */
+		void resetCounters(List<Class<?>> entityClasses) {
+			Map<Class<?>, Long> entitiesCounter = getEntitiesCounter();
+			EntityCounter[] entityCounters = new EntityCounter[entityClasses.size()];
+			for (int i = 0; i < entityCounters.length; i++) {
+				Long count = entitiesCounter.get(entityClasses.get(i));
+				entityCounters[i] = new EntityCounter(entityClasses.get(i), (count != null) ? count.longValue() : 0);
 			}
-			entitiesCounter.put(enityClass, counter);
+			this.entityCounters = entityCounters;
+		}
+		
+		/**
+		 * Counts the same entity classes as the given statistics, from zero.
+		 */
+		void resetCounters(Statistics statistics) {
+			EntityCounter[] entityCounters = new EntityCounter[statistics.entityCounters.length];
+			for (int i = 0; i < entityCounters.length; i++) {
+				entityCounters[i] = new EntityCounter(statistics.entityCounters[i].entityClass, 0);
+			}
+			this.entityCounters = entityCounters;
+		}
+		
+		/**
+		 * Returns the current value of each counter, by slot.
+		 */
+		long[] getCounters() {
+			EntityCounter[] entityCounters = this.entityCounters;
+			long[] counters = new long[entityCounters.length];
+			for (int i = 0; i < counters.length; i++) {
+				counters[i] = entityCounters[i].count.sum();
+			}
+			
+			return counters;
+		}
+		
+		/**
+		 * Publishes the number of the last processed line, from the parsing thread (an ordered write, 
+		 * without a memory barrier for each line).
+		 */
+		void setProcessedLineNumber(long lineNumber) {
+			processedLineNumber.lazySet(lineNumber);
+		}
+		
+		void incrementCounter(int slot) {
+			entityCounters[slot].count.increment();
+		}
+		
+		/**
+		 * Adds the given counts, by slot.
+		 */
+		void addCounters(long[] counts) {
+			EntityCounter[] entityCounters = this.entityCounters;
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] != 0) {
+					entityCounters[i].count.add(counts[i]);
+				}
+			}
+		}
+		
+		/**
+		 * The counter of an entity class. The counter is striped, so the worker threads increment it without contention.
+		 */
+		static class EntityCounter implements Serializable {
+			
+			private static final long serialVersionUID = 1L;
+			
+			private final Class<?> entityClass;
+			private final LongAdder count;
+			
+			public EntityCounter(Class<?> entityClass, long count) {
+				this.entityClass = entityClass;
+				this.count = new LongAdder();
+				this.count.add(count);
+			}
+			
 		}
 		
     }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A byte range of a file that starts and ends on line boundaries. The lines are mapped on a worker thread. 
+ * The entities of the unordered handlers are delivered immediately, all other events are kept for 
+ * an in order delivery from the parsing thread.
+ * <p>
+ * The range is memory mapped and the lines are read with a {@link ByteLineScanner}, so most lines 
+ * are passed to the mapper as a reusable view, without decoding and without allocation.
+ * 
+ * @author Decebal Suiu
+ */
+class FileChunk implements Callable<FileChunk> {
+
+	private FF2J ff2j;
+	private ChunkedFileParser parser;
+	private FileChannel channel;
+	private long start;
+	private long end;
+	private ThreadLocal<MappingContext> contexts;
+	
+	private int lineCount;
+	/** The position in file after the last processed line */
+	private long processedEnd;
+	private List<LineEvent> events;
+	/** The entities delivered to the unordered handlers only, by statistics slot */
+	private long[] entityCounts;
+	private Exception error;
+	
+	public FileChunk(FF2J ff2j, ChunkedFileParser parser, FileChannel channel, long start, long end, ThreadLocal<MappingContext> contexts) {
+		this.ff2j = ff2j;
+		this.parser = parser;
+		this.channel = channel;
+		this.start = start;
+		this.end = end;
+		this.contexts = contexts;
+		
+		processedEnd = start;
+		events = new ArrayList<LineEvent>();
+		entityCounts = new long[ff2j.getStatistics().getCounters().length];
+	}
+
+	/**
+	 * Returns the position in file after the chunk.
+	 */
+	public long getEnd() {
+		return end;
+	}
+	
+	/**
+	 * Returns the number of lines from this chunk that were processed.
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * Returns the position in file after the last processed line, the end of the chunk if there was no error.
+	 */
+	public long getProcessedEnd() {
+		return processedEnd;
+	}
+
+	public List<LineEvent> getEvents() {
+		return events;
+	}
+
+	/**
+	 * Returns the number of entities delivered only to the unordered handlers, by statistics slot.
+	 */
+	public long[] getEntityCounts() {
+		return entityCounts;
+	}
+
+	/**
+	 * Returns the exception that stopped the processing of this chunk, if any.
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	@Override
+	public FileChunk call() throws Exception {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		boolean collectNoEntities = (ff2j.getNoEntityHandler() != null);
+		MappingContext context = contexts.get();
+		ByteLineScanner scanner = new ByteLineScanner(buffer, ff2j.getCharset());
+		CharSequence lineText;
+		while ((lineText = scanner.nextLine()) != null) {
+			if (parser.isStopped()) {
+				// the parsing ended, the events of this chunk are not delivered
+				break;
+			}
+			lineCount++;
+			
+			try {
+				onLine(lineText, context, collectNoEntities, scanner);
+			} catch (Exception e) {
+				processedEnd = start + scanner.getPosition();
+				error = e;
+				break;
+			}
+		}
+		if (error == null) {
+			processedEnd = end;
+		}
+		
+		return this;
+	}
+	
+	private void onLine(CharSequence lineText, MappingContext context, boolean collectNoEntities, ByteLineScanner scanner) throws Exception {
+		Object entity = ff2j.getMapper().mapEntity(lineText, context);
+		if (entity != null) {
+			EntityHandlers handlers = ff2j.getEntityHandlers(entity.getClass());
+			if (handlers != null) {
+				handlers.handleUnordered(entity);
+				if (handlers.hasOrdered()) {
+					// counted when delivered
+					events.add(new LineEvent(lineCount, start + scanner.getPosition(), entity, null));
+				} else {
+					entityCounts[handlers.getSlot()]++;
+				}
+			}
+		} else if (collectNoEntities) {
+			events.add(new LineEvent(lineCount, start + scanner.getPosition(), null, lineText.toString()));
+		}
+	}
+	
+	/**
+	 * An entity or a no entity line, kept for the in order delivery.
+	 */
+	static class LineEvent {
+		
+		/** The line index (one based) relative to the start of the chunk */
+		private int lineIndex;
+		/** The position in file after the line */
+		private long offset;
+		private Object entity;
+		private String lineText;
+		
+		public LineEvent(int lineIndex, long offset, Object entity, String lineText) {
+			this.lineIndex = lineIndex;
+			this.offset = offset;
+			this.entity = entity;
+			this.lineText = lineText;
+		}
+
+		public int getLineIndex() {
+			return lineIndex;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public Object getEntity() {
+			return entity;
+		}
+
+		public String getLineText() {
+			return lineText;
+		}
+		
+	}
+	
+}
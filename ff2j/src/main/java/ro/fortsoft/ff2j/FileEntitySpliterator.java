@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the entities mapped from a byte range of a file. The range starts on a line boundary 
+ * and it's split at a line boundary near its middle, so a parallel stream maps the file on all cores.
+ * The range is memory mapped window by window (see {@link FF2J#setChunkSize(int)}) while it's traversed,
+ * so nothing is read before it's needed.
+ * 
+ * @author Decebal Suiu
+ */
+class FileEntitySpliterator implements Spliterator<Object> {
+
+	/** A range is not split below this size in bytes */
+	static final long MIN_SPLIT_SIZE = 1024 * 1024;
+	
+	private FF2J ff2j;
+	private FileChannel channel;
+	/** The start of the bytes not yet mapped in a window */
+	private long position;
+	private long end;
+	private ByteLineScanner scanner;
+	private MappingContext context;
+	
+	public FileEntitySpliterator(FF2J ff2j, FileChannel channel, long start, long end) {
+		this.ff2j = ff2j;
+		this.channel = channel;
+		this.position = start;
+		this.end = end;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Object> action) {
+		Mapper mapper = ff2j.getMapper();
+		if (context == null) {
+			context = mapper.createContext();
+		}
+		
+		try {
+			while (true) {
+				if (scanner == null) {
+					if (position >= end) {
+						return false;
+					}
+					long windowEnd = ChunkedFileParser.nextLineStart(channel, position + ff2j.getChunkSize(), end);
+					MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowEnd - position);
+					scanner = new ByteLineScanner(buffer, ff2j.getCharset());
+					position = windowEnd;
+				}
+				
+				CharSequence lineText = scanner.nextLine();
+				if (lineText == null) {
+					scanner = null;
+					continue;
+				}
+				
+				Object entity = mapper.mapEntity(lineText, context);
+				if (entity != null) {
+					action.accept(entity);
+					return true;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public Spliterator<Object> trySplit() {
+		// only a range without a window in progress is split
+		if ((scanner != null) || (end - position < 2 * MIN_SPLIT_SIZE)) {
+			return null;
+		}
+		
+		long middle;
+		try {
+			middle = ChunkedFileParser.nextLineStart(channel, position + (end - position) / 2, end);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (middle >= end) {
+			return null;
+		}
+		
+		FileEntitySpliterator prefix = new FileEntitySpliterator(ff2j, channel, position, middle);
+		position = middle;
+		
+		return prefix;
+	}
+
+	/**
+	 * Returns the number of bytes not yet read, an upper bound of the number of entities.
+	 */
+	@Override
+	public long estimateSize() {
+		return end - position;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a growing file, like <code>tail -F</code>. The appended bytes are read incrementally and only 
+ * the complete lines are processed, a partial last line waits for its line separator. 
+ * <p>
+ * When the end of the file is reached the follower waits for a change of the file, signaled by 
+ * a {@link WatchService} on the parent directory, or for the poll interval (some file systems don't 
+ * deliver events). All events pending at wake-up are consumed at once, so a burst of writes gives 
+ * one read. At the end of the file the follower also checks if the file was truncated (the size is less 
+ * than the read position) or rotated (the path points to another file). In both cases the rest 
+ * of the old file is processed and the new file is read from the beginning.
+ * 
+ * @author Decebal Suiu
+ */
+class FileFollower {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private FF2J ff2j;
+	private Path path;
+	private long pollInterval;
+	private MappingContext context;
+	private ByteBuffer buffer;
+	private ByteLineScanner scanner;
+	private volatile WatchService watcher;
+	private volatile boolean stopped;
+	
+	private FileChannel channel;
+	/** The identity of the followed file, null if the file system doesn't provide one */
+	private Object fileKey;
+	/** The position in file of the first byte that was not read */
+	private long position;
+	private long lineNumber;
+	/** The position in file after the last processed line */
+	private long offset;
+	private long skipLines;
+	private boolean progressed;
+	
+	public FileFollower(FF2J ff2j, Path path, long pollInterval) {
+		this.ff2j = ff2j;
+		this.path = path;
+		this.pollInterval = pollInterval;
+		
+		context = ff2j.getMapper().createContext();
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		scanner = new ByteLineScanner(buffer, ff2j.getCharset());
+		skipLines = ff2j.getSkipLines();
+	}
+	
+	/**
+	 * Returns the number of the last processed line of the current file.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+	
+	/**
+	 * Returns the position in the current file after the last processed line.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+	
+	/**
+	 * Stops the following. Can be called from any thread.
+	 */
+	public void stop() {
+		stopped = true;
+		WatchService watcher = this.watcher;
+		if (watcher != null) {
+			try {
+				// wakes up the follower
+				watcher.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	
+	/**
+	 * Returns false if the following was stopped by a listener or by a handler and true if it was stopped 
+	 * with {@link #stop()} or by an interruption of the current thread.
+	 */
+	public boolean follow() throws Exception {
+		Path directory = path.toAbsolutePath().getParent();
+		watcher = path.getFileSystem().newWatchService();
+		try {
+			directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+					StandardWatchEventKinds.ENTRY_DELETE);
+			while (!stopped) {
+				progressed = false;
+				if (channel == null) {
+					open();
+				}
+				if (channel != null) {
+					if (!readAppended() || !checkFile()) {
+						return false;
+					}
+				}
+				if (ff2j.getBatchMaxLatency() > 0) {
+					ff2j.flushExpiredBatches();
+				}
+				if (!progressed && !stopped) {
+					await();
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// stopped
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedByInterruptException e) {
+			// the interrupt status is set
+		} finally {
+			close();
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		
+		return true;
+	}
+	
+	private void open() throws IOException {
+		try {
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			// waits for the file
+			return;
+		}
+		
+		fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+		position = 0;
+		lineNumber = 0;
+		offset = 0;
+		buffer.clear();
+		progressed = true;
+	}
+	
+	private void close() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			channel = null;
+		}
+	}
+	
+	/**
+	 * Reads and processes the bytes appended since the last read.
+	 */
+	private boolean readAppended() throws Exception {
+		int count;
+		while (!stopped) {
+			if (!buffer.hasRemaining()) {
+				// a line longer than the buffer
+				growBuffer();
+			}
+			count = channel.read(buffer, position);
+			if (count <= 0) {
+				break;
+			}
+			position += count;
+			progressed = true;
+			if (!processLines(false)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+
+	/**
+	 * Checks if the file was truncated or rotated and switches to the new content.
+	 */
+	private boolean checkFile() throws Exception {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			// moved and not yet recreated, the old file may still grow
+			return true;
+		}
+		
+		boolean rotated = (fileKey != null) && !fileKey.equals(attributes.fileKey());
+		boolean truncated = !rotated && (channel.size() < position);
+		if (!rotated && !truncated) {
+			return true;
+		}
+		
+		if (rotated && !readAppended()) {
+			// the lines written before the rotation
+			return false;
+		}
+		// the last line of the old content doesn't end with a line separator
+		if (!processLines(true)) {
+			return false;
+		}
+		
+		skipLines = 0;
+		if (rotated) {
+			close();
+			open();
+		} else {
+			position = 0;
+			lineNumber = 0;
+			offset = 0;
+			buffer.clear();
+			progressed = true;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Processes the complete lines from the buffer and keeps the partial last line for the next read.
+	 */
+	private boolean processLines(boolean endOfFile) throws Exception {
+		int end = buffer.position();
+		int linesEnd = end;
+		if (!endOfFile) {
+			while ((linesEnd > 0) && (buffer.get(linesEnd - 1) != '\n')) {
+				linesEnd--;
+			}
+		}
+		
+		boolean goNext = true;
+		if (linesEnd > 0) {
+			// the position in file of the first byte from buffer
+			long bufferOffset = position - end;
+			ProgressListener progressListener = ff2j.getProgressListener();
+			long batchMaxLatency = ff2j.getBatchMaxLatency();
+			scanner.reset(0, linesEnd);
+			CharSequence lineText;
+			while ((lineText = scanner.nextLine()) != null) {
+				lineNumber++;
+				ff2j.getStatistics().setProcessedLineNumber(lineNumber);
+				offset = bufferOffset + scanner.getPosition();
+				if (lineNumber > skipLines) {
+					if (progressListener != null) {
+						goNext = progressListener.inProgress(lineNumber);
+					}
+					if (goNext) {
+						goNext = ff2j.onFileLine(lineNumber, lineText, context);
+					}
+					if (batchMaxLatency > 0) {
+						ff2j.flushExpiredBatches();
+					}
+					if (!goNext) {
+						break;
+					}
+				}
+			}
+		}
+		
+		buffer.limit(end);
+		buffer.position(linesEnd);
+		buffer.compact();
+		
+		return goNext;
+	}
+	
+	private void growBuffer() {
+		ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+		buffer.flip();
+		newBuffer.put(buffer);
+		buffer = newBuffer;
+		scanner = new ByteLineScanner(buffer, ff2j.getCharset());
+	}
+	
+	/**
+	 * Waits for a change of the followed file or for the poll interval.
+	 */
+	private void await() throws InterruptedException {
+		long timeout = pollInterval;
+		long batchMaxLatency = ff2j.getBatchMaxLatency();
+		if ((batchMaxLatency > 0) && (batchMaxLatency < timeout)) {
+			timeout = batchMaxLatency;
+		}
+		
+		Path fileName = path.getFileName();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0) {
+			WatchKey key = watcher.poll(remaining, TimeUnit.NANOSECONDS);
+			if (key == null) {
+				return;
+			}
+			
+			// consumes all pending events, the changes of other files from the directory are ignored
+			boolean changed = false;
+			do {
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if ((event.kind() == StandardWatchEventKinds.OVERFLOW) || fileName.equals(event.context())) {
+						changed = true;
+					}
+				}
+				key.reset();
+			} while ((key = watcher.poll()) != null);
+			
+			if (changed) {
+				return;
+			}
+		}
+	}
+	
+}
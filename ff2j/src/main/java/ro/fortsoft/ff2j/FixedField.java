@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import ro.fortsoft.ff2j.converter.Converter;
+import ro.fortsoft.ff2j.converter.DefaultConverter;
+
+/**
+ * A field of a {@link FixedWidthEntity}, the text from the column start to start + length. 
+ * The last fields may be cut by the end of the line (for example when the trailing spaces 
+ * were removed), but a line that ends before the start of a field is not mapped to the entity.
+ * 
+ * @author Decebal Suiu
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface FixedField {
+
+	/**
+	 * The column (zero based) of the first character.
+	 */
+	int start();
+	
+	int length();
+	
+	/**
+	 * If true (the default value) the leading and trailing spaces are removed.
+	 */
+	boolean trim() default true;
+	
+	Class<? extends Converter<?>> converter() default DefaultConverter.class;
+	
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps the lines of a fixed width file, where each field is at a fixed column (see {@link FixedField}).
+ * The fields are sliced from the line by position, no regex is used, and are converted like the fields 
+ * of a {@link RegexEntity} (the int, long, double and boolean fields are decoded without a substring). 
+ * <p>
+ * If the record type is set, only the lines that contain the record type at the record type start
+ * are mapped to this entity (for example the header, detail and trailer records of a mainframe export);
+ * otherwise every line is mapped to this entity.
+ * 
+ * @author Decebal Suiu
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+public @interface FixedWidthEntity {
+
+	/**
+	 * The text that identifies the lines of this entity, empty for all lines.
+	 */
+	String recordType() default "";
+	
+	/**
+	 * The column (zero based) of the record type.
+	 */
+	int recordTypeStart() default 0;
+	
+	/**
+	 * The entities with a higher priority are tried first. The entities with the same 
+	 * priority are tried in the order in which they were mapped.
+	 */
+	int priority() default 0;
+	
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.MatchResult;
+
+/**
+ * Matches the lines of a {@link FixedWidthEntity}: checks the record type and slices the fields 
+ * by column. The group i of the match is the field i of the layout (one based), the group 0 is the line.
+ * The matcher is its own match result, reused for all lines.
+ * 
+ * @author Decebal Suiu
+ */
+class FixedWidthMatcher implements LineMatcher, MatchResult {
+
+	private Layout layout;
+	private CharSequence lineText;
+	/** The start and the end of each group */
+	private int[] starts;
+	private int[] ends;
+	
+	public FixedWidthMatcher(Layout layout) {
+		this.layout = layout;
+		
+		starts = new int[layout.getFieldCount() + 1];
+		ends = new int[starts.length];
+	}
+
+	@Override
+	public MatchResult match(CharSequence lineText) {
+		int length = lineText.length();
+		if (length < layout.minLength) {
+			return null;
+		}
+		String recordType = layout.recordType;
+		int recordTypeStart = layout.recordTypeStart;
+		for (int i = 0; i < recordType.length(); i++) {
+			if (lineText.charAt(recordTypeStart + i) != recordType.charAt(i)) {
+				return null;
+			}
+		}
+		
+		this.lineText = lineText;
+		starts[0] = 0;
+		ends[0] = length;
+		for (int i = 1; i < starts.length; i++) {
+			int start = layout.starts[i];
+			int end = Math.min(start + layout.lengths[i], length);
+			if (layout.trims[i]) {
+				while ((start < end) && (lineText.charAt(start) == ' ')) {
+					start++;
+				}
+				while ((end > start) && (lineText.charAt(end - 1) == ' ')) {
+					end--;
+				}
+			}
+			starts[i] = start;
+			ends[i] = end;
+		}
+		
+		return this;
+	}
+	
+	@Override
+	public int start() {
+		return starts[0];
+	}
+
+	@Override
+	public int start(int group) {
+		return starts[group];
+	}
+
+	@Override
+	public int end() {
+		return ends[0];
+	}
+
+	@Override
+	public int end(int group) {
+		return ends[group];
+	}
+
+	@Override
+	public String group() {
+		return group(0);
+	}
+
+	@Override
+	public String group(int group) {
+		return lineText.subSequence(starts[group], ends[group]).toString();
+	}
+
+	@Override
+	public int groupCount() {
+		return starts.length - 1;
+	}
+	
+	/**
+	 * The record type and the columns of the fields of an entity.
+	 */
+	static class Layout {
+		
+		private String recordType;
+		private int recordTypeStart;
+		/** By group, the index 0 is not used */
+		private int[] starts;
+		private int[] lengths;
+		private boolean[] trims;
+		/** A shorter line is not matched */
+		private int minLength;
+		
+		public Layout(String recordType, int recordTypeStart, List<FixedField> fields) {
+			this.recordType = recordType;
+			this.recordTypeStart = recordTypeStart;
+			
+			starts = new int[fields.size() + 1];
+			lengths = new int[starts.length];
+			trims = new boolean[starts.length];
+			for (int i = 0; i < fields.size(); i++) {
+				FixedField field = fields.get(i);
+				starts[i + 1] = field.start();
+				lengths[i + 1] = field.length();
+				trims[i + 1] = field.trim();
+				minLength = Math.max(minLength, field.start() + 1);
+			}
+			minLength = Math.max(minLength, recordTypeStart + recordType.length());
+		}
+		
+		public int getFieldCount() {
+			return starts.length - 1;
+		}
+		
+		/**
+		 * Returns the literals that appear in any line of the entity (the record type).
+		 */
+		public List<String> getLiterals() {
+			List<String> literals = new ArrayList<String>();
+			if (!recordType.isEmpty()) {
+				literals.add(recordType);
+			}
+			
+			return literals;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * A compressed byte range of a gzip file that starts with a member header. The members of the range
+ * are inflated on a worker thread. The range is complete if its last member ends at the end of the range. 
+ * Otherwise the end of the range was not a member boundary (or the inflated bytes exceeded the limit)
+ * and the decoder is kept, to continue the last member.
+ * 
+ * @author Decebal Suiu
+ */
+class GzipChunk implements Callable<GzipChunk> {
+
+	private FileChannel channel;
+	private long start;
+	private long end;
+	private int maxLength;
+	
+	private byte[] data;
+	private int length;
+	/** The position in file after the last finished member */
+	private long processedEnd;
+	/** Not null if the last member continues after the range */
+	private GzipDecoder decoder;
+	private boolean endOfData;
+	
+	public GzipChunk(FileChannel channel, long start, long end, int maxLength) {
+		this.channel = channel;
+		this.start = start;
+		this.end = end;
+		this.maxLength = maxLength;
+	}
+
+	public long getStart() {
+		return start;
+	}
+	
+	public long getEnd() {
+		return end;
+	}
+	
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public long getProcessedEnd() {
+		return processedEnd;
+	}
+
+	/**
+	 * Returns the decoder of the last member if it continues after the range, null otherwise.
+	 */
+	public GzipDecoder getDecoder() {
+		return decoder;
+	}
+	
+	/**
+	 * Returns true if the gzip data ends in this range (it's followed by bytes that are not a member).
+	 */
+	public boolean isEndOfData() {
+		return endOfData;
+	}
+
+	@Override
+	public GzipChunk call() throws Exception {
+		// a guess of the compression ratio
+		data = new byte[(int) Math.min(maxLength, Math.max(1024, 4 * (end - start)))];
+		GzipDecoder decoder = new GzipDecoder(channel, end);
+		long position = start;
+		try {
+			while (position < end) {
+				if (!decoder.startMember(position)) {
+					endOfData = true;
+					break;
+				}
+				
+				int count;
+				do {
+					if (length == data.length) {
+						if (length >= maxLength) {
+							// continued by the caller
+							this.decoder = decoder;
+							break;
+						}
+						data = Arrays.copyOf(data, (int) Math.min(maxLength, 2L * length));
+					}
+					count = decoder.inflate(data, length, data.length - length);
+					if (count > 0) {
+						length += count;
+					} else if (count == 0) {
+						// the member continues after the range
+						this.decoder = decoder;
+					}
+				} while (count > 0);
+				
+				if (this.decoder != null) {
+					break;
+				}
+				position = decoder.getMemberEnd();
+			}
+			processedEnd = position;
+		} finally {
+			if (this.decoder == null) {
+				decoder.end();
+			}
+		}
+		
+		return this;
+	}
+	
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Inflates the gzip members of a file, starting from a member header. The compressed bytes are read 
+ * with positional reads up to a limit, so several decoders can inflate different members of the same file 
+ * in parallel. The trailer (CRC32 and size) of each member is verified.
+ * <p>
+ * A BGZF file (the block gzip format used by bioinformatics tools) is a series of small members whose
+ * header holds the size of the member (the <code>BC</code> extra subfield), see {@link #getBlockSize(FileChannel, long)}.
+ * 
+ * @author Decebal Suiu
+ */
+class GzipDecoder {
+
+	private static final int ID1 = 0x1f;
+	private static final int ID2 = 0x8b;
+	private static final int CM_DEFLATE = 8;
+	
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	private static final int FRESERVED = 0xe0;
+	
+	private static final int MIN_HEADER_SIZE = 10;
+	private static final int TRAILER_SIZE = 8;
+	private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+	
+	private FileChannel channel;
+	private long limit;
+	private Inflater inflater;
+	private CRC32 crc;
+	private byte[] input;
+	/** The position in file of the next compressed byte given to the inflater */
+	private long inputPosition;
+	private long memberSize;
+	private long memberEnd;
+	
+	/**
+	 * @param limit the compressed bytes after this position are not read, except the trailer of the last member
+	 */
+	public GzipDecoder(FileChannel channel, long limit) {
+		this.channel = channel;
+		this.limit = limit;
+		
+		inflater = new Inflater(true);
+		crc = new CRC32();
+		input = new byte[INPUT_BUFFER_SIZE];
+	}
+	
+	public void setLimit(long limit) {
+		this.limit = limit;
+	}
+
+	/**
+	 * Returns the position in file after the last finished member (after its trailer).
+	 */
+	public long getMemberEnd() {
+		return memberEnd;
+	}
+	
+	/**
+	 * Starts a member at the given position. Returns false if there is no member header at that position
+	 * (the end of file, or the bytes that follow the gzip data).
+	 */
+	public boolean startMember(long position) throws IOException {
+		int headerSize = getHeaderSize(channel, position);
+		if (headerSize < 0) {
+			return false;
+		}
+		
+		inflater.reset();
+		crc.reset();
+		memberSize = 0;
+		inputPosition = position + headerSize;
+		
+		return true;
+	}
+	
+	/**
+	 * Inflates bytes of the current member. Returns the number of bytes, -1 if the member is finished
+	 * (and the trailer was verified) or 0 if the member continues after the limit.
+	 */
+	public int inflate(byte[] buffer, int offset, int length) throws IOException {
+		try {
+			while (true) {
+				int count = inflater.inflate(buffer, offset, length);
+				if (count > 0) {
+					crc.update(buffer, offset, count);
+					memberSize += count;
+					
+					return count;
+				}
+				
+				if (inflater.finished()) {
+					finishMember();
+					return -1;
+				}
+				if (inflater.needsDictionary()) {
+					throw new ZipException("Invalid gzip data at " + inputPosition);
+				}
+				if (inflater.needsInput()) {
+					if (inputPosition >= limit) {
+						return 0;
+					}
+					fill();
+				}
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException("Invalid gzip data before " + inputPosition + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Releases the inflater.
+	 */
+	public void end() {
+		inflater.end();
+	}
+	
+	/**
+	 * Returns true if the file starts with the gzip magic number.
+	 */
+	public static boolean isGzip(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(2);
+		read(channel, buffer, 0);
+		
+		return (buffer.position() == 2) && ((buffer.get(0) & 0xff) == ID1) && ((buffer.get(1) & 0xff) == ID2);
+	}
+	
+	/**
+	 * Returns the size of the member header at the given position, or -1 if there is no valid header.
+	 */
+	public static int getHeaderSize(FileChannel channel, long position) throws IOException {
+		HeaderReader reader = new HeaderReader(channel, position);
+		if ((reader.next() != ID1) || (reader.next() != ID2) || (reader.next() != CM_DEFLATE)) {
+			return -1;
+		}
+		int flags = reader.next();
+		if ((flags < 0) || ((flags & FRESERVED) != 0)) {
+			return -1;
+		}
+		// MTIME, XFL, OS
+		if (!reader.skip(6)) {
+			return -1;
+		}
+		if ((flags & FEXTRA) != 0) {
+			int extraLength = reader.next() | (reader.next() << 8);
+			if ((extraLength < 0) || !reader.skip(extraLength)) {
+				return -1;
+			}
+		}
+		if (((flags & FNAME) != 0) && !reader.skipString()) {
+			return -1;
+		}
+		if (((flags & FCOMMENT) != 0) && !reader.skipString()) {
+			return -1;
+		}
+		if (((flags & FHCRC) != 0) && !reader.skip(2)) {
+			return -1;
+		}
+		
+		return reader.getCount();
+	}
+	
+	/**
+	 * Returns true if the position looks like the start of a member written by a usual gzip writer.
+	 * Used to find the member boundaries, without inflating. A false positive (the bytes of the 
+	 * compressed data that look like a header) is still possible, so a boundary is confirmed only
+	 * when the previous member ends there. 
+	 */
+	public static boolean isMemberStart(FileChannel channel, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(MIN_HEADER_SIZE);
+		read(channel, buffer, position);
+		if (buffer.position() < MIN_HEADER_SIZE) {
+			return false;
+		}
+		
+		int xfl = buffer.get(8) & 0xff;
+		int os = buffer.get(9) & 0xff;
+		if (((xfl != 0) && (xfl != 2) && (xfl != 4)) || ((os > 13) && (os != 255))) {
+			return false;
+		}
+		int headerSize = getHeaderSize(channel, position);
+		if (headerSize < 0) {
+			return false;
+		}
+		
+		// the first deflate block must not have the reserved type
+		buffer.clear();
+		buffer.limit(1);
+		read(channel, buffer, position + headerSize);
+		
+		return (buffer.position() == 1) && (((buffer.get(0) >> 1) & 3) != 3);
+	}
+	
+	/**
+	 * Returns the size of the BGZF block at the given position, or -1 if there is no BGZF block header.
+	 */
+	public static int getBlockSize(FileChannel channel, long position) throws IOException {
+		// the fixed header, XLEN and the BC subfield
+		ByteBuffer buffer = ByteBuffer.allocate(18);
+		read(channel, buffer, position);
+		if ((buffer.position() < 18) || ((buffer.get(0) & 0xff) != ID1) || ((buffer.get(1) & 0xff) != ID2) 
+				|| ((buffer.get(3) & FEXTRA) == 0)) {
+			return -1;
+		}
+		if ((buffer.get(12) != 'B') || (buffer.get(13) != 'C') || (buffer.get(14) != 2) || (buffer.get(15) != 0)) {
+			return -1;
+		}
+		
+		return ((buffer.get(16) & 0xff) | ((buffer.get(17) & 0xff) << 8)) + 1;
+	}
+
+	private void fill() throws IOException {
+		int length = (int) Math.min(input.length, limit - inputPosition);
+		ByteBuffer buffer = ByteBuffer.wrap(input, 0, length);
+		read(channel, buffer, inputPosition);
+		if (buffer.position() == 0) {
+			throw new EOFException("Unexpected end of gzip data at " + inputPosition);
+		}
+		inflater.setInput(input, 0, buffer.position());
+		inputPosition += buffer.position();
+	}
+	
+	private void finishMember() throws IOException {
+		long trailerStart = inputPosition - inflater.getRemaining();
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+		read(channel, trailer, trailerStart);
+		if (trailer.position() < TRAILER_SIZE) {
+			throw new EOFException("Unexpected end of gzip data at " + trailerStart);
+		}
+		
+		long expectedCrc = (trailer.get(0) & 0xffL) | ((trailer.get(1) & 0xffL) << 8) 
+				| ((trailer.get(2) & 0xffL) << 16) | ((trailer.get(3) & 0xffL) << 24);
+		long expectedSize = (trailer.get(4) & 0xffL) | ((trailer.get(5) & 0xffL) << 8) 
+				| ((trailer.get(6) & 0xffL) << 16) | ((trailer.get(7) & 0xffL) << 24);
+		if ((expectedCrc != crc.getValue()) || (expectedSize != (memberSize & 0xffffffffL))) {
+			throw new ZipException("Corrupt gzip trailer at " + trailerStart);
+		}
+		memberEnd = trailerStart + TRAILER_SIZE;
+	}
+	
+	/**
+	 * Reads until the buffer is full or the end of file.
+	 */
+	private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int count = channel.read(buffer, position);
+			if (count < 0) {
+				break;
+			}
+			position += count;
+		}
+	}
+	
+	/**
+	 * Reads the bytes of a member header.
+	 */
+	static class HeaderReader {
+		
+		private FileChannel channel;
+		private long position;
+		private ByteBuffer buffer;
+		private int count;
+		
+		public HeaderReader(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+			
+			buffer = ByteBuffer.allocate(256);
+			buffer.limit(0);
+		}
+		
+		/**
+		 * Returns the number of bytes read.
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the next byte or -1 at the end of file.
+		 */
+		public int next() throws IOException {
+			if (!buffer.hasRemaining()) {
+				buffer.clear();
+				read(channel, buffer, position);
+				buffer.flip();
+				position += buffer.limit();
+				if (!buffer.hasRemaining()) {
+					return -1;
+				}
+			}
+			count++;
+			
+			return buffer.get() & 0xff;
+		}
+		
+		public boolean skip(int n) throws IOException {
+			for (int i = 0; i < n; i++) {
+				if (next() < 0) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		public boolean skipString() throws IOException {
+			int b;
+			while ((b = next()) > 0) {
+				// skip
+			}
+			
+			return (b == 0);
+		}
+		
+	}
+	
+}
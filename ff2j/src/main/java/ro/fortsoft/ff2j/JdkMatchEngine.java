@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import ro.fortsoft.ff2j.regex.MultiPatternMatcher;
+
+/**
+ * The default match engine, with java.util.regex. It supports the full java syntax 
+ * (back references, look-arounds, ...) but a pattern with nested or ambiguous quantifiers 
+ * can backtrack for a very long time on a garbage line.
+ * 
+ * @author Decebal Suiu
+ */
+public class JdkMatchEngine implements MatchEngine {
+
+	@Override
+	public CompiledRegex compile(final String regex) {
+		final Pattern pattern = Pattern.compile(regex);
+		final List<String> literals = RegexLiterals.extract(regex);
+		final boolean multiPatternSupported = MultiPatternMatcher.isSupported(regex);
+		
+		return new CompiledRegex() {
+
+			@Override
+			public String getRegex() {
+				return regex;
+			}
+
+			@Override
+			public List<String> getLiterals() {
+				return literals;
+			}
+			
+			@Override
+			public boolean isMultiPatternSupported() {
+				return multiPatternSupported;
+			}
+			
+			@Override
+			public LineMatcher createMatcher() {
+				return new RegexLineMatcher(pattern);
+			}
+			
+		};
+	}
+	
+}
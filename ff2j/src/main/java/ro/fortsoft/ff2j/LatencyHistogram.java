@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds, with power of two buckets. The percentiles are 
+ * the upper bounds of the buckets, so they are accurate within a factor of two. Thread safe.
+ * 
+ * @author Decebal Suiu
+ */
+class LatencyHistogram {
+
+	/** The bucket i counts the values from 2^(i-1) to 2^i - 1 */
+	private AtomicLongArray buckets;
+	private LongAdder count;
+	private LongAdder total;
+	private LongAccumulator max;
+	
+	public LatencyHistogram() {
+		buckets = new AtomicLongArray(Long.SIZE + 1);
+		count = new LongAdder();
+		total = new LongAdder();
+		max = new LongAccumulator(Math::max, 0);
+	}
+	
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+		count.increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+	
+	public long getCount() {
+		return count.sum();
+	}
+	
+	public long getTotal() {
+		return total.sum();
+	}
+	
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Returns the value (an upper bound) below which the given fraction of the values fall.
+	 * 
+	 * @param fraction between 0 and 1
+	 */
+	public long getPercentile(double fraction) {
+		long[] counts = new long[buckets.length()];
+		long sum = 0;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			sum += counts[i];
+		}
+		if (sum == 0) {
+			return 0;
+		}
+		
+		long rank = (long) Math.ceil(fraction * sum);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if ((seen >= rank) && (counts[i] > 0)) {
+				return (i == 0) ? 0 : Math.min(max.get(), (i == Long.SIZE) ? Long.MAX_VALUE : (1L << i) - 1);
+			}
+		}
+		
+		return max.get();
+	}
+	
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.List;
+import java.util.regex.MatchResult;
+
+/**
+ * Maps single lines to entities, outside of a parsing, with the mapped entities and the matching
+ * settings of a {@link FF2J} (see {@link FF2J#createLineMapper()}). The handlers, the listener
+ * and the statistics are not used. A line mapper keeps the matchers it reuses from line to line,
+ * so it's not thread safe; create one per thread.
+ * 
+ * @author Decebal Suiu
+ */
+public class LineMapper {
+
+	private Mapper mapper;
+	private MappingContext context;
+	
+	LineMapper(Mapper mapper) {
+		this.mapper = mapper;
+		
+		context = mapper.createContext();
+	}
+	
+	/**
+	 * Returns the entity mapped from the line, or null if the line doesn't match any mapped entity.
+	 * 
+	 * @param lineText the line, without the line separator
+	 */
+	public Object map(CharSequence lineText) throws Exception {
+		return mapper.mapEntity(lineText, context);
+	}
+	
+	/**
+	 * Creates an entity of a mapped class from a match of its pattern made by the caller.
+	 * 
+	 * @param entityClass the mapped class
+	 * @param lineText the matched line
+	 * @param matchResult the match of the line, with the groups of the entity pattern
+	 */
+	public <T> T populate(Class<T> entityClass, CharSequence lineText, MatchResult matchResult) throws Exception {
+		List<EntityMetaData> entitiesMetaData = mapper.getEntitiesMetaData();
+		for (int i = 0; i < entitiesMetaData.size(); i++) {
+			EntityMetaData entityMetaData = entitiesMetaData.get(i);
+			if (entityMetaData.getEntityClass() == entityClass) {
+				return entityClass.cast(entityMetaData.getPopulator().populate(lineText, matchResult));
+			}
+		}
+		
+		throw new IllegalArgumentException("The class " + entityClass.getName() + " is not mapped");
+	}
+
+}
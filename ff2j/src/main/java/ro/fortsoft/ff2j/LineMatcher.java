@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.regex.MatchResult;
+
+/**
+ * Matches the lines of an entity. The fields of a matched line are the groups of the returned
+ * match, so the entities are populated the same way whatever the line format.
+ * A line matcher keeps the state of the last match, so it's used by a single thread 
+ * (see {@link MappingContext}). Implement it to plug a regex engine (see {@link MatchEngine}).
+ * 
+ * @author Decebal Suiu
+ */
+public interface LineMatcher {
+
+	/**
+	 * Returns the match of the line, or null if the line doesn't belong to the entity.
+	 * The match is valid until the next call.
+	 */
+	public MatchResult match(CharSequence lineText);
+	
+}
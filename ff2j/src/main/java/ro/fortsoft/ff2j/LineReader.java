@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a {@link Reader} into a reusable char buffer. A line is terminated by
+ * a line feed, a carriage return or a carriage return followed by a line feed, like 
+ * {@link java.io.BufferedReader#readLine()}. The returned line is a view of the buffer, valid 
+ * until the next read, so reading a line allocates nothing (the buffer grows only for the 
+ * lines longer than the buffer).
+ * 
+ * @author Decebal Suiu
+ */
+class LineReader {
+
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	private Reader reader;
+	private char[] buffer;
+	/** The start of the next line */
+	private int position;
+	/** The end of the read chars */
+	private int limit;
+	/** True if the last line ended with a carriage return (a following line feed is skipped) */
+	private boolean skipLF;
+	private CharArraySequence line;
+	
+	public LineReader(Reader reader) {
+		this.reader = reader;
+		
+		buffer = new char[DEFAULT_BUFFER_SIZE];
+		line = new CharArraySequence();
+	}
+	
+	/**
+	 * Returns the next line (without the line terminator) or null at the end of the stream.
+	 */
+	public CharSequence readLine() throws IOException {
+		int scan = position;
+		while (true) {
+			if (scan == limit) {
+				int lineLength = limit - position;
+				if (!fill()) {
+					if (lineLength == 0) {
+						return null;
+					}
+					
+					line.reset(buffer, 0, lineLength);
+					position = limit;
+					return line;
+				}
+				scan = lineLength;
+				continue;
+			}
+			
+			char c = buffer[scan];
+			if (skipLF) {
+				skipLF = false;
+				if (c == '\n') {
+					position++;
+					scan++;
+					continue;
+				}
+			}
+			if ((c == '\n') || (c == '\r')) {
+				line.reset(buffer, position, scan - position);
+				position = scan + 1;
+				skipLF = (c == '\r');
+				return line;
+			}
+			scan++;
+		}
+	}
+	
+	/**
+	 * Returns true if a line can be read (or at least started) without blocking.
+	 */
+	public boolean ready() throws IOException {
+		return (position < limit) || reader.ready();
+	}
+	
+	/**
+	 * Moves the current line at the start of the buffer (growing the buffer if the line fills it) 
+	 * and reads more chars after it. Returns false at the end of the stream.
+	 */
+	private boolean fill() throws IOException {
+		int lineLength = limit - position;
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, lineLength);
+		} else if (lineLength == buffer.length) {
+			buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+		}
+		position = 0;
+		limit = lineLength;
+		
+		int count;
+		do {
+			count = reader.read(buffer, limit, buffer.length - limit);
+		} while (count == 0);
+		if (count < 0) {
+			return false;
+		}
+		
+		limit += count;
+		return true;
+	}
+	
+}
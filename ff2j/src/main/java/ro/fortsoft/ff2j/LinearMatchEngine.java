@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.MatchResult;
+
+import ro.fortsoft.ff2j.regex.MultiPatternMatcher;
+import ro.fortsoft.ff2j.regex.UnsupportedRegexException;
+
+/**
+ * A match engine without backtracking. The pattern is compiled to an automaton that is simulated 
+ * in a single scan of the line (a lazily built DFA finds if the line matches, then an NFA simulation 
+ * computes the capture groups), so the cost of a line is bounded by its length times the size 
+ * of the pattern, whatever the line.
+ * <p>
+ * Only the regular subset of the java.util.regex syntax is supported: literals, character classes, 
+ * groups, alternations, greedy or lazy quantifiers, ^ and $. A pattern with back references, 
+ * look-arounds, possessive quantifiers or inline flags is rejected with an {@link UnsupportedRegexException}
+ * when the entity is mapped.
+ * 
+ * @author Decebal Suiu
+ */
+public class LinearMatchEngine implements MatchEngine {
+
+	@Override
+	public CompiledRegex compile(final String regex) {
+		final MultiPatternMatcher multiPatternMatcher = new MultiPatternMatcher(Collections.singletonList(regex));
+		final List<String> literals = RegexLiterals.extract(regex);
+		
+		return new CompiledRegex() {
+
+			@Override
+			public String getRegex() {
+				return regex;
+			}
+
+			@Override
+			public List<String> getLiterals() {
+				return literals;
+			}
+			
+			@Override
+			public boolean isMultiPatternSupported() {
+				return true;
+			}
+			
+			@Override
+			public LineMatcher createMatcher() {
+				final MultiPatternMatcher.State state = multiPatternMatcher.createState();
+				
+				return new LineMatcher() {
+
+					@Override
+					public MatchResult match(CharSequence lineText) {
+						return (multiPatternMatcher.match(lineText, state) >= 0) ? state.getMatchResult() : null;
+					}
+					
+				};
+			}
+			
+		};
+	}
+	
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * An Aho-Corasick automaton over the mandatory literals of all mapped entities. One scan of a line finds 
+ * the entities whose literals all occur in that line; only these entities can match the line. 
+ * The transitions for ASCII characters are precomputed in a table, the other characters follow 
+ * the failure links.
+ * 
+ * @author Decebal Suiu
+ */
+class LiteralPrefilter {
+
+	private static final int ASCII = 128;
+	
+	/** The complete transition table for the ASCII characters (state * ASCII + char) */
+	private int[] next;
+	/** The trie transitions for the non ASCII characters, per state (null if there are none) */
+	private Map<Character, Integer>[] extendedNext;
+	private int[] fail;
+	/** The literal indexes recognized in each state (null if there are none) */
+	private int[][] outputs;
+	/** The entity indexes for each literal index */
+	private int[][] literalEntities;
+	/** The number of distinct literals for each entity index */
+	private int[] requiredLiterals;
+	
+	public LiteralPrefilter(List<EntityMetaData> entitiesMetaData) {
+		// collect the distinct literals
+		Map<String, Set<Integer>> literals = new LinkedHashMap<String, Set<Integer>>();
+		requiredLiterals = new int[entitiesMetaData.size()];
+		for (int i = 0; i < entitiesMetaData.size(); i++) {
+			Set<String> entityLiterals = new LinkedHashSet<String>(entitiesMetaData.get(i).getLiterals());
+			for (String literal : entityLiterals) {
+				Set<Integer> entities = literals.get(literal);
+				if (entities == null) {
+					entities = new LinkedHashSet<Integer>();
+					literals.put(literal, entities);
+				}
+				entities.add(i);
+			}
+			requiredLiterals[i] = entityLiterals.size();
+		}
+		literalEntities = new int[literals.size()][];
+		int literalIndex = 0;
+		for (Set<Integer> entities : literals.values()) {
+			literalEntities[literalIndex++] = toArray(entities);
+		}
+		
+		build(new ArrayList<String>(literals.keySet()));
+	}
+
+	/**
+	 * Returns true if at least one entity has mandatory literals.
+	 */
+	public boolean isSelective() {
+		return literalEntities.length > 0;
+	}
+	
+	public Scratch createScratch() {
+		return new Scratch(literalEntities.length, requiredLiterals.length);
+	}
+	
+	/**
+	 * Scans the line and updates the scratch. After the scan, {@link Scratch#isCandidate(int)} returns true 
+	 * for the entities whose literals all occur in that line.
+	 */
+	public void scan(CharSequence lineText, Scratch scratch) {
+		scratch.reset(requiredLiterals);
+		
+		int state = 0;
+		int length = lineText.length();
+		for (int i = 0; i < length; i++) {
+			char c = lineText.charAt(i);
+			if (c < ASCII) {
+				state = next[state * ASCII + c];
+			} else {
+				state = nextExtended(state, c);
+			}
+			
+			int[] output = outputs[state];
+			if (output != null) {
+				for (int literal : output) {
+					scratch.found(literal, literalEntities[literal]);
+				}
+			}
+		}
+	}
+	
+	private int nextExtended(int state, char c) {
+		while (true) {
+			Map<Character, Integer> transitions = extendedNext[state];
+			if (transitions != null) {
+				Integer target = transitions.get(c);
+				if (target != null) {
+					return target;
+				}
+			}
+			if (state == 0) {
+				return 0;
+			}
+			state = fail[state];
+		}
+	}
+	
+	private void build(List<String> literals) {
+		// the trie
+		List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+		List<List<Integer>> trieOutputs = new ArrayList<List<Integer>>();
+		trie.add(new HashMap<Character, Integer>());
+		trieOutputs.add(new ArrayList<Integer>());
+		for (int i = 0; i < literals.size(); i++) {
+			int state = 0;
+			for (char c : literals.get(i).toCharArray()) {
+				Integer target = trie.get(state).get(c);
+				if (target == null) {
+					target = trie.size();
+					trie.add(new HashMap<Character, Integer>());
+					trieOutputs.add(new ArrayList<Integer>());
+					trie.get(state).put(c, target);
+				}
+				state = target;
+			}
+			trieOutputs.get(state).add(i);
+		}
+		
+		// the failure links and the transition table (breadth first)
+		int stateCount = trie.size();
+		next = new int[stateCount * ASCII];
+		extendedNext = newTransitions(stateCount);
+		fail = new int[stateCount];
+		outputs = new int[stateCount][];
+		Queue<Integer> queue = new ArrayDeque<Integer>();
+		queue.add(0);
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			if (state != 0) {
+				trieOutputs.get(state).addAll(trieOutputs.get(fail[state]));
+			}
+			List<Integer> stateOutputs = trieOutputs.get(state);
+			outputs[state] = stateOutputs.isEmpty() ? null : toArray(new LinkedHashSet<Integer>(stateOutputs));
+			
+			for (char c = 0; c < ASCII; c++) {
+				Integer target = trie.get(state).get(c);
+				if (target != null) {
+					fail[target] = (state == 0) ? 0 : next[fail[state] * ASCII + c];
+					next[state * ASCII + c] = target;
+					queue.add(target);
+				} else {
+					next[state * ASCII + c] = (state == 0) ? 0 : next[fail[state] * ASCII + c];
+				}
+			}
+			for (Map.Entry<Character, Integer> entry : trie.get(state).entrySet()) {
+				char c = entry.getKey();
+				if (c >= ASCII) {
+					int target = entry.getValue();
+					fail[target] = (state == 0) ? 0 : nextExtended(fail[state], c);
+					if (extendedNext[state] == null) {
+						extendedNext[state] = new HashMap<Character, Integer>();
+					}
+					extendedNext[state].put(c, target);
+					queue.add(target);
+				}
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Map<Character, Integer>[] newTransitions(int length) {
+		return (Map<Character, Integer>[]) new Map<?, ?>[length];
+	}
+	
+	private static int[] toArray(Set<Integer> values) {
+		int[] array = new int[values.size()];
+		int i = 0;
+		for (Integer value : values) {
+			array[i++] = value;
+		}
+		
+		return array;
+	}
+	
+	/**
+	 * The per thread state of a scan.
+	 */
+	static class Scratch {
+		
+		private boolean[] seen;
+		private int[] seenLiterals;
+		private int seenCount;
+		private int[] missingLiterals;
+		
+		private Scratch(int literalCount, int entityCount) {
+			seen = new boolean[literalCount];
+			seenLiterals = new int[literalCount];
+			missingLiterals = new int[entityCount];
+		}
+		
+		public boolean isCandidate(int entityIndex) {
+			return missingLiterals[entityIndex] == 0;
+		}
+		
+		private void reset(int[] requiredLiterals) {
+			for (int i = 0; i < seenCount; i++) {
+				seen[seenLiterals[i]] = false;
+			}
+			seenCount = 0;
+			System.arraycopy(requiredLiterals, 0, missingLiterals, 0, requiredLiterals.length);
+		}
+		
+		private void found(int literal, int[] entities) {
+			if (!seen[literal]) {
+				seen[literal] = true;
+				seenLiterals[seenCount++] = literal;
+				for (int entity : entities) {
+					missingLiterals[entity]--;
+				}
+			}
+		}
+		
+	}
+	
+}
@@ -14,15 +14,12 @@ package ro.fortsoft.ff2j;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.regex.MatchResult;
 
 import ro.fortsoft.ff2j.converter.Converter;
-import ro.fortsoft.ff2j.converter.ConverterUtils;
-import ro.fortsoft.ff2j.converter.DefaultConverter;
+import ro.fortsoft.ff2j.converter.ConverterRegistry;
+import ro.fortsoft.ff2j.regex.MultiPatternMatcher;
 
 /**
  * @author Decebal Suiu
@@ -32,13 +29,40 @@ class Mapper {
 	 /** Set of classes that have been validated for mapping by this mapper */
     private List<Class<?>> mappedClasses;
     
-    private Set<EntityMetaData> entitesMetaData;
+    private List<EntityMetaData> entitesMetaData;
 	private Validator validator;
+	private ConverterRegistry converterRegistry;
+	private LiteralPrefilter prefilter;
+	private boolean multiPatternMatching;
+	private boolean adaptiveOrdering;
+	/** The priority of each entity */
+	private int[] priorities;
+	/** The automaton of all supported patterns (null if multi pattern matching is disabled) */
+	private MultiPatternMatcher multiPatternMatcher;
+	/** The entity index of each expression of the automaton */
+	private int[] multiPatternEntities;
+	/** True for the entities matched by the automaton */
+	private boolean[] inMultiPattern;
+	/** True if there are entities not matched by the automaton (matched with java.util.regex or sliced) */
+	private boolean hasLineMatcherEntities;
+	private MatchEngine matchEngine;
+	/** The selection of the entities by record type (null if no entity has a record type) */
+	private RecordTypeDispatcher dispatcher;
+	/** The metrics of the current parsing (null if the metrics are disabled) */
+	private volatile Metrics metrics;
     
     public Mapper() {
+    	this(new ConverterRegistry(ConverterRegistry.getInstance()));
+    }
+    
+    public Mapper(ConverterRegistry converterRegistry) {
+    	this.converterRegistry = converterRegistry;
+    	
+    	matchEngine = new JdkMatchEngine();
 		mappedClasses = new ArrayList<Class<?>>();
-    	entitesMetaData = new HashSet<EntityMetaData>();
+    	entitesMetaData = new ArrayList<EntityMetaData>();
     	validator = new Validator();
+    	compile();
     }
     
     public boolean isMapped(Class<?> entityClass) {
@@ -54,61 +78,307 @@ class Mapper {
 		}
 		
         mappedClasses.add(entityClass);
+        compile();
+    }
+    
+    /**
+     * Binds again the converters of all mapped entities (after a converter was registered).
+     */
+    public void bindConverters() {
+    	for (EntityMetaData entityMetaData : entitesMetaData) {
+    		try {
+				entityMetaData.setPopulator(new EntityPopulator(entityMetaData, converterRegistry));
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+    	}
+    }
+    
+    public boolean isMultiPatternMatching() {
+    	return multiPatternMatching;
+    }
+    
+    public void setMultiPatternMatching(boolean multiPatternMatching) {
+    	this.multiPatternMatching = multiPatternMatching;
+    	compile();
     }
 
+    public MatchEngine getMatchEngine() {
+    	return matchEngine;
+    }
+    
+    /**
+     * Sets the engine of the regex patterns and compiles again the patterns of the mapped entities.
+     * 
+     * @throws IllegalArgumentException if a pattern of a mapped entity is not supported by the engine
+     */
+    public void setMatchEngine(MatchEngine matchEngine) {
+    	List<MatchEngine.CompiledRegex> regexes = new ArrayList<MatchEngine.CompiledRegex>();
+    	for (EntityMetaData entityMetaData : entitesMetaData) {
+    		MatchEngine.CompiledRegex regex = entityMetaData.getRegex();
+    		if (regex != null) {
+    			try {
+    				regex = matchEngine.compile(regex.getRegex());
+    			} catch (RuntimeException e) {
+    				throw new IllegalArgumentException("In [" + entityMetaData.getEntityClass().getName() + "]: " + e.getMessage(), e);
+    			}
+    		}
+    		regexes.add(regex);
+    	}
+    	
+    	this.matchEngine = matchEngine;
+    	for (int i = 0; i < regexes.size(); i++) {
+    		MatchEngine.CompiledRegex regex = regexes.get(i);
+    		if (regex != null) {
+    			entitesMetaData.get(i).setRegex(regex);
+    			entitesMetaData.get(i).setLiterals(regex.getLiterals());
+    		}
+    	}
+    	compile();
+    }
+    
+    public boolean isAdaptiveOrdering() {
+    	return adaptiveOrdering;
+    }
+    
+    public void setAdaptiveOrdering(boolean adaptiveOrdering) {
+    	this.adaptiveOrdering = adaptiveOrdering;
+    }
+    
+    public Metrics getMetrics() {
+    	return metrics;
+    }
+    
+    public void setMetrics(Metrics metrics) {
+    	this.metrics = metrics;
+    }
+    
     public List<Class<?>> getMappedClasses() {
         return mappedClasses;
     }
+    
+    public List<EntityMetaData> getEntitiesMetaData() {
+    	return entitesMetaData;
+    }
                 
-    public Object mapEntity(String lineText) throws Exception {
-    	for (EntityMetaData entityMetaData : entitesMetaData) {
-    		Matcher matcher = entityMetaData.getPattern().matcher(lineText);
-			if (matcher.matches()) {
-//				int groupCount = matcher.groupCount();
-//				System.out.println("groupCount = " + groupCount);
-				Class<?> entityClass = entityMetaData.getEntityClass();
-				Object entity = entityClass.newInstance();
-				Set<Field> fields = entityMetaData.getMappedFields();
-				for (Field field : fields) {
-					EntityMetaData.FieldMetaData fieldMetaData = entityMetaData.getFieldMetaData(field);
-					String text = matcher.group(fieldMetaData.getGroup());
-					setFieldValue(field, entity, text, fieldMetaData.getConverter());
+    /**
+     * Creates the state used by a thread to map lines.
+     */
+    public MappingContext createContext() {
+    	MultiPatternMatcher.State multiPatternState = (multiPatternMatcher != null) ? multiPatternMatcher.createState() : null;
+    	
+    	LineMatcher[] matchers = new LineMatcher[entitesMetaData.size()];
+    	for (int i = 0; i < matchers.length; i++) {
+    		matchers[i] = entitesMetaData.get(i).createLineMatcher();
+    	}
+    	
+    	RecordTypeDispatcher.Scratch dispatcherScratch = (dispatcher != null) ? dispatcher.createScratch() : null;
+    	
+    	return new MappingContext(prefilter.createScratch(), multiPatternState, dispatcherScratch, matchers, priorities);
+    }
+    
+    /**
+     * With multi pattern matching, one scan of the line finds the first entity (matched by the automaton) 
+     * whose pattern matches the line. The entities before it that the automaton cannot match are 
+     * still tried with java.util.regex.
+     * <p>
+     * When more than one entity is mapped, the line is first scanned for the mandatory literals 
+     * of all patterns and only the patterns whose literals occur in the line are tried.
+     * <p>
+     * The entities are tried in the order of the context. With adaptive ordering, the context counts 
+     * the hits of each entity and moves the most frequent entities first (within the same priority).
+     * <p>
+     * When record types are used, the entities are selected by the record type of the line, with a hash 
+     * lookup. If a single entity is selected (the usual case) only its matcher is tried; if none is selected 
+     * the line is not mapped, without any regex work. The prefilter and the automaton are not used.
+     */
+    public Object mapEntity(CharSequence lineText, MappingContext context) throws Exception {
+    	Metrics metrics = this.metrics;
+    	if (metrics != null) {
+    		metrics.recordLine(lineText.length());
+    	}
+    	
+    	int entityCount = entitesMetaData.size();
+    	int multiPatternMatch = entityCount;
+    	boolean[] skipped = null;
+    	LiteralPrefilter.Scratch literals = null;
+    	RecordTypeDispatcher.Scratch recordTypes = null;
+    	boolean search = true;
+    	int match = -1;
+    	MatchResult matchResult = null;
+    	if (dispatcher != null) {
+    		// the record type selects the entities, the automaton and the prefilter are not used
+    		recordTypes = context.getDispatcherScratch();
+    		dispatcher.select(lineText, recordTypes);
+    		if (recordTypes.getCount() == 1) {
+    			// the usual case, only one matcher is tried
+    			int i = recordTypes.getCandidate(0);
+    			matchResult = matchLine(lineText, context, i, metrics);
+    			if (matchResult != null) {
+    				match = i;
+    			}
+    		}
+    		search = (recordTypes.getCount() > 1);
+    	} else {
+	    	if (multiPatternMatcher != null) {
+	    		long start = (metrics != null) ? System.nanoTime() : 0;
+	    		int expression = multiPatternMatcher.match(lineText, context.getMultiPatternState());
+	    		if (metrics != null) {
+	    			metrics.recordMultiPatternMatch(System.nanoTime() - start);
+	    		}
+	    		if (expression >= 0) {
+	    			multiPatternMatch = multiPatternEntities[expression];
+	    		}
+	    		skipped = inMultiPattern;
+	    	}
+	    	
+	    	if (!hasLineMatcherEntities) {
+	    		// all entities are matched by the automaton
+	    		if (multiPatternMatch < entityCount) {
+	    			match = multiPatternMatch;
+	    			matchResult = context.getMultiPatternState().getMatchResult();
+	    		}
+	    		search = false;
+	    	} else if ((entityCount > 1) && prefilter.isSelective()) {
+	    		literals = context.getPrefilterScratch();
+	    		prefilter.scan(lineText, literals);
+	    	}
+    	}
+    	
+    	if (search) {
+	    	int[] order = context.getOrder();
+	    	for (int k = 0; k < entityCount; k++) {
+	    		int i = order[k];
+	    		if (i == multiPatternMatch) {
+	    			match = i;
+	    			matchResult = context.getMultiPatternState().getMatchResult();
+	    			break;
+	    		}
+	    		if (((skipped != null) && skipped[i]) || ((literals != null) && !literals.isCandidate(i))
+	    				|| ((recordTypes != null) && !recordTypes.isCandidate(i))) {
+	    			continue;
+	    		}
+	    		
+	    		matchResult = matchLine(lineText, context, i, metrics);
+				if (matchResult != null) {
+					match = i;
+					break;
 				}
-				
-				return entity;
-			}
+	    	}
     	}
     	
-    	return null;
-    }
-    
-	private void setFieldValue(Field field, Object target, String text, Class<? extends Converter<?>> converter) throws Exception {
-		field.setAccessible(true);
-		if (String.class.equals(field.getType())) {
-		    field.set(target, text);
-		} else {
-			Object value = null;
-			if (DefaultConverter.class.equals(converter)) {
-				value = ConverterUtils.convert(text, field.getType());
-			} else {
-				value = converter.newInstance().decode(text);
-			}
-			field.set(target, value);
-		}
-	}
-	
+    	Object entity = null;
+    	if (match >= 0) {
+    		EntityPopulator populator = entitesMetaData.get(match).getPopulator();
+    		if (metrics != null) {
+    			metrics.recordHit(match);
+    			entity = populator.populate(lineText, matchResult, metrics.getConversions(match), metrics.getConversionTimes(match));
+    		} else {
+    			entity = populator.populate(lineText, matchResult);
+    		}
+    	}
+    	if (adaptiveOrdering) {
+    		context.recordMatch(match);
+    	}
+    	
+    	return entity;
+    }
+    
+    private MatchResult matchLine(CharSequence lineText, MappingContext context, int entityIndex, Metrics metrics) {
+    	if (metrics == null) {
+    		return context.getMatcher(entityIndex).match(lineText);
+    	}
+    	
+		long start = System.nanoTime();
+		MatchResult matchResult = context.getMatcher(entityIndex).match(lineText);
+		metrics.recordAttempt(entityIndex, System.nanoTime() - start);
+		
+		return matchResult;
+    }
+    
+    /**
+     * Builds the structures used to match the lines (the record type dispatcher, the literal prefilter 
+     * and the multi pattern automaton).
+     */
+    private void compile() {
+    	dispatcher = RecordTypeDispatcher.isUsed(entitesMetaData) ? new RecordTypeDispatcher(entitesMetaData) : null;
+    	prefilter = new LiteralPrefilter(entitesMetaData);
+    	priorities = new int[entitesMetaData.size()];
+    	for (int i = 0; i < priorities.length; i++) {
+    		priorities[i] = entitesMetaData.get(i).getPriority();
+    	}
+    	multiPatternMatcher = null;
+    	multiPatternEntities = null;
+    	inMultiPattern = null;
+    	hasLineMatcherEntities = !entitesMetaData.isEmpty();
+    	if (!multiPatternMatching) {
+    		return;
+    	}
+    	
+    	List<String> regexes = new ArrayList<String>();
+    	List<Integer> entities = new ArrayList<Integer>();
+    	inMultiPattern = new boolean[entitesMetaData.size()];
+    	for (int i = 0; i < entitesMetaData.size(); i++) {
+    		MatchEngine.CompiledRegex regex = entitesMetaData.get(i).getRegex();
+    		if ((regex != null) && regex.isMultiPatternSupported()) {
+    			regexes.add(regex.getRegex());
+    			entities.add(i);
+    			inMultiPattern[i] = true;
+    		}
+    	}
+    	if (regexes.isEmpty()) {
+    		return;
+    	}
+    	
+    	multiPatternMatcher = new MultiPatternMatcher(regexes);
+    	multiPatternEntities = new int[entities.size()];
+    	for (int i = 0; i < entities.size(); i++) {
+    		multiPatternEntities[i] = entities.get(i);
+    	}
+    	hasLineMatcherEntities = (regexes.size() < entitesMetaData.size());
+    }
+    
 	class Validator {
 		
 	    public void validate(Class<?> entityClass) throws Exception {
 	    	String messagePrefix = "In [" + entityClass.getName() + "]: ";
 
-	    	// test for @RegexEntity on entity class
-	    	if (!entityClass.isAnnotationPresent(RegexEntity.class)) {
-	    		throw new Exception(messagePrefix +  "Class isn't annotated with @RegexEntity");
+	    	// test for @RegexEntity, @FixedWidthEntity or @DelimitedEntity on entity class
+	    	boolean regex = entityClass.isAnnotationPresent(RegexEntity.class);
+	    	boolean fixedWidth = entityClass.isAnnotationPresent(FixedWidthEntity.class);
+	    	boolean delimited = entityClass.isAnnotationPresent(DelimitedEntity.class);
+	    	if ((regex ? 1 : 0) + (fixedWidth ? 1 : 0) + (delimited ? 1 : 0) > 1) {
+	    		throw new Exception(messagePrefix +  "Class is annotated with more than one of @RegexEntity, @FixedWidthEntity and @DelimitedEntity");
 	    	}
 	    	
+	    	EntityMetaData entityMetaData;
+	    	if (regex) {
+	    		entityMetaData = createRegexMetaData(entityClass, messagePrefix);
+	    	} else if (fixedWidth) {
+	    		entityMetaData = createFixedWidthMetaData(entityClass, messagePrefix);
+	    	} else if (delimited) {
+	    		entityMetaData = createDelimitedMetaData(entityClass, messagePrefix);
+	    	} else {
+	    		throw new Exception(messagePrefix +  "Class isn't annotated with @RegexEntity, @FixedWidthEntity or @DelimitedEntity");
+	    	}
+			entityMetaData.setPopulator(new EntityPopulator(entityMetaData, converterRegistry));
+//			System.out.println(entityMetaData);
+			
+			// keep the entities sorted by priority (descending), in the mapping order for the same priority
+			int index = entitesMetaData.size();
+			while ((index > 0) && (entitesMetaData.get(index - 1).getPriority() < entityMetaData.getPriority())) {
+				index--;
+			}
+			entitesMetaData.add(index, entityMetaData);
+	    }
+	    
+	    private EntityMetaData createRegexMetaData(Class<?> entityClass, String messagePrefix) throws Exception {
 	    	// test for regex pattern
-	    	String pattern = entityClass.getAnnotation(RegexEntity.class).pattern();
+	    	RegexEntity regexEntity = entityClass.getAnnotation(RegexEntity.class);
+	    	if (regexEntity.recordTypeStart() < 0) {
+	    		throw new Exception(messagePrefix + "The record type start cannot be negative");
+	    	}
+	    	String pattern = regexEntity.pattern();
 	    	Field patternField;
 			try {
 				patternField = entityClass.getDeclaredField(pattern);
@@ -120,7 +390,11 @@ class Mapper {
 //	    	System.out.println(entityClass.getName() + " >>> " + regex);
 
 	    	EntityMetaData entityMetaData = new EntityMetaData(entityClass);
-	    	entityMetaData.setPattern(Pattern.compile(regex));
+	    	MatchEngine.CompiledRegex compiledRegex = compileRegex(regex, messagePrefix);
+	    	entityMetaData.setRegex(compiledRegex);
+	    	entityMetaData.setLiterals(compiledRegex.getLiterals());
+	    	entityMetaData.setPriority(regexEntity.priority());
+	    	entityMetaData.setRecordType(regexEntity.recordType(), regexEntity.recordTypeStart());
 			Field[] fields = entityClass.getDeclaredFields();
 			for (Field field : fields) {
 				if (field.isAnnotationPresent(RegexField.class)) {
@@ -130,8 +404,78 @@ class Mapper {
 					entityMetaData.addFieldMetaData(field, new EntityMetaData.FieldMetaData(group, converter));
 				}
 			}
-//			System.out.println(entityMetaData);
-			entitesMetaData.add(entityMetaData);
+			
+			return entityMetaData;
+	    }
+	    
+	    private MatchEngine.CompiledRegex compileRegex(String regex, String messagePrefix) throws Exception {
+	    	try {
+	    		return matchEngine.compile(regex);
+	    	} catch (RuntimeException e) {
+	    		throw new Exception(messagePrefix + e.getMessage(), e);
+	    	}
+	    }
+	    
+	    private EntityMetaData createFixedWidthMetaData(Class<?> entityClass, String messagePrefix) throws Exception {
+	    	FixedWidthEntity fixedWidthEntity = entityClass.getAnnotation(FixedWidthEntity.class);
+	    	if (fixedWidthEntity.recordTypeStart() < 0) {
+	    		throw new Exception(messagePrefix + "The record type start cannot be negative");
+	    	}
+	    	
+	    	EntityMetaData entityMetaData = new EntityMetaData(entityClass);
+	    	entityMetaData.setPriority(fixedWidthEntity.priority());
+	    	entityMetaData.setRecordType(fixedWidthEntity.recordType(), fixedWidthEntity.recordTypeStart());
+	    	List<FixedField> fixedFields = new ArrayList<FixedField>();
+			Field[] fields = entityClass.getDeclaredFields();
+			for (Field field : fields) {
+				if (field.isAnnotationPresent(FixedField.class)) {
+					FixedField fixedField = field.getAnnotation(FixedField.class);
+					if ((fixedField.start() < 0) || (fixedField.length() <= 0)) {
+						throw new Exception(messagePrefix + "Invalid start or length of the field " + field.getName());
+					}
+					fixedFields.add(fixedField);
+					// the group of the field in the match is its index in the layout
+					entityMetaData.addFieldMetaData(field, new EntityMetaData.FieldMetaData(fixedFields.size(), fixedField.converter()));
+				}
+			}
+			FixedWidthMatcher.Layout layout = new FixedWidthMatcher.Layout(fixedWidthEntity.recordType(), 
+					fixedWidthEntity.recordTypeStart(), fixedFields);
+			entityMetaData.setFixedWidthLayout(layout);
+			entityMetaData.setLiterals(layout.getLiterals());
+			
+			return entityMetaData;
+	    }
+	    
+	    private EntityMetaData createDelimitedMetaData(Class<?> entityClass, String messagePrefix) throws Exception {
+	    	DelimitedEntity delimitedEntity = entityClass.getAnnotation(DelimitedEntity.class);
+	    	if (delimitedEntity.recordTypeIndex() < 0) {
+	    		throw new Exception(messagePrefix + "The record type index cannot be negative");
+	    	}
+	    	if ((delimitedEntity.separator() == delimitedEntity.quote()) || (delimitedEntity.separator() == delimitedEntity.escape())) {
+	    		throw new Exception(messagePrefix + "The separator cannot be the quote or the escape");
+	    	}
+	    	
+	    	EntityMetaData entityMetaData = new EntityMetaData(entityClass);
+	    	entityMetaData.setPriority(delimitedEntity.priority());
+	    	int maxIndex = -1;
+			Field[] fields = entityClass.getDeclaredFields();
+			for (Field field : fields) {
+				if (field.isAnnotationPresent(DelimitedField.class)) {
+					DelimitedField delimitedField = field.getAnnotation(DelimitedField.class);
+					int index = delimitedField.index();
+					if (index < 0) {
+						throw new Exception(messagePrefix + "Invalid index of the field " + field.getName());
+					}
+					maxIndex = Math.max(maxIndex, index);
+					// the group of the field in the match is its index + 1
+					entityMetaData.addFieldMetaData(field, new EntityMetaData.FieldMetaData(index + 1, delimitedField.converter()));
+				}
+			}
+			DelimitedMatcher.Layout layout = new DelimitedMatcher.Layout(delimitedEntity, maxIndex);
+			entityMetaData.setDelimitedLayout(layout);
+			entityMetaData.setLiterals(layout.getLiterals());
+			
+			return entityMetaData;
 	    }
 	
 	}
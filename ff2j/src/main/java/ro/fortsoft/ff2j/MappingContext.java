@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import ro.fortsoft.ff2j.regex.MultiPatternMatcher;
+
+/**
+ * The state used by a single thread to map lines. A context is created by {@link Mapper#createContext()}
+ * at the start of a parsing and it's reused for all lines mapped by that thread.
+ * 
+ * @author Decebal Suiu
+ */
+class MappingContext {
+
+	/** The number of mapped lines between two reorderings of the entities */
+	static final int REORDER_INTERVAL = 4096;
+	
+	private LiteralPrefilter.Scratch prefilterScratch;
+	private MultiPatternMatcher.State multiPatternState;
+	private RecordTypeDispatcher.Scratch dispatcherScratch;
+	private LineMatcher[] matchers;
+	private int[] priorities;
+	private int[] order;
+	private long[] hits;
+	private int lines;
+	
+	public MappingContext(LiteralPrefilter.Scratch prefilterScratch, MultiPatternMatcher.State multiPatternState, 
+			RecordTypeDispatcher.Scratch dispatcherScratch, LineMatcher[] matchers, int[] priorities) {
+		this.prefilterScratch = prefilterScratch;
+		this.multiPatternState = multiPatternState;
+		this.dispatcherScratch = dispatcherScratch;
+		this.matchers = matchers;
+		this.priorities = priorities;
+		
+		order = new int[priorities.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		hits = new long[priorities.length];
+	}
+
+	public LiteralPrefilter.Scratch getPrefilterScratch() {
+		return prefilterScratch;
+	}
+
+	public MultiPatternMatcher.State getMultiPatternState() {
+		return multiPatternState;
+	}
+	
+	public RecordTypeDispatcher.Scratch getDispatcherScratch() {
+		return dispatcherScratch;
+	}
+	
+	/**
+	 * Returns the matcher of the entity with the given index, reused for all lines.
+	 */
+	public LineMatcher getMatcher(int entityIndex) {
+		return matchers[entityIndex];
+	}
+	
+	/**
+	 * Returns the indexes of the entities in the order in which they are tried.
+	 */
+	public int[] getOrder() {
+		return order;
+	}
+
+	/**
+	 * Counts a hit for the entity with the given index (-1 if the line was not mapped). 
+	 * Every {@link #REORDER_INTERVAL} lines the entities are sorted by priority and then 
+	 * by hits, and the hits are halved, so that the order follows the recent lines.
+	 */
+	public void recordMatch(int entityIndex) {
+		if (entityIndex >= 0) {
+			hits[entityIndex]++;
+		}
+		if (++lines < REORDER_INTERVAL) {
+			return;
+		}
+		
+		lines = 0;
+		// insertion sort, it's stable and the number of entities is small
+		for (int i = 1; i < order.length; i++) {
+			int entity = order[i];
+			int j = i;
+			while ((j > 0) && before(entity, order[j - 1])) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = entity;
+		}
+		for (int i = 0; i < hits.length; i++) {
+			hits[i] >>= 1;
+		}
+	}
+	
+	private boolean before(int entity, int other) {
+		if (priorities[entity] != priorities[other]) {
+			return priorities[entity] > priorities[other];
+		}
+		
+		return hits[entity] > hits[other];
+	}
+	
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.List;
+
+/**
+ * The regex engine that matches the lines with the patterns of the {@link RegexEntity} entities.
+ * The default engine is {@link JdkMatchEngine} (java.util.regex). {@link LinearMatchEngine} matches 
+ * in a time bounded by the line length, for the inputs that can make a backtracking engine stall.
+ * 
+ * @author Decebal Suiu
+ */
+public interface MatchEngine {
+
+	/**
+	 * Compiles the pattern of an entity. The pattern is compiled when the entity is mapped, 
+	 * so an invalid or unsupported pattern is rejected by {@link FF2J#map(Class)}.
+	 * 
+	 * @throws RuntimeException if the pattern is invalid or uses a construct not supported by this engine
+	 */
+	public CompiledRegex compile(String regex);
+	
+	/**
+	 * A compiled pattern, shared by all threads.
+	 */
+	public interface CompiledRegex {
+		
+		public String getRegex();
+		
+		/**
+		 * Returns the literals that appear in every line matched by this pattern, with the semantics of this 
+		 * engine (empty if unknown). When more entities are mapped, a line is matched only against 
+		 * the patterns whose literals all occur in the line.
+		 */
+		public List<String> getLiterals();
+		
+		/**
+		 * Returns true if the pattern may be matched by the shared automaton of the multi pattern matching 
+		 * (see {@link FF2J#setMultiPatternMatching(boolean)}) instead of this engine. Return true only if 
+		 * the engine matches with the java.util.regex semantics and the pattern uses only the regular 
+		 * subset of the syntax.
+		 */
+		public boolean isMultiPatternSupported();
+		
+		/**
+		 * Creates a matcher of the lines, used by a single thread. The groups of a match are the capturing 
+		 * groups of the pattern and the pattern must match the entire line.
+		 */
+		public LineMatcher createMatcher();
+		
+	}
+	
+}
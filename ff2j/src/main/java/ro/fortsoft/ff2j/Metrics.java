@@ -0,0 +1,415 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of a parsing: the lines and characters, the match attempts, hits and time of each entity, 
+ * the conversions and the conversion time of each field and the latency of each handler.
+ * The counters are updated by the mapping threads without contention and are read while the parsing runs 
+ * (for example with JConsole, see {@link MetricsMXBean}).
+ * <p>
+ * The match time of an entity is the time of its regex matching (the time of the multi pattern automaton 
+ * is counted separately, because one scan matches all its entities). The latency of a handler is the time 
+ * spent in {@link EntityHandler#handleEntity(Object)} or {@link BatchEntityHandler#handleEntities(List)};
+ * for an {@link AsyncEntityHandler} it's the time of the hand off (the wait for a full queue).
+ * 
+ * @see FF2J#setMetrics(String)
+ * @author Decebal Suiu
+ */
+public class Metrics implements MetricsMXBean {
+
+	private String name;
+	private long startTime;
+	private LongAdder lines;
+	private LongAdder chars;
+	private LongAdder multiPatternMatchTime;
+	private String[] entityNames;
+	private LongAdder[] attempts;
+	private LongAdder[] hits;
+	private LongAdder[] matchTimes;
+	/** The fields of each entity */
+	private String[][] fieldLabels;
+	private LongAdder[][] conversions;
+	private LongAdder[][] conversionTimes;
+	private List<String> handlerNames;
+	private List<LatencyHistogram> handlerHistograms;
+	private ObjectName objectName;
+	
+	Metrics(String name, List<EntityMetaData> entitiesMetaData) {
+		this.name = name;
+		
+		startTime = System.currentTimeMillis();
+		lines = new LongAdder();
+		chars = new LongAdder();
+		multiPatternMatchTime = new LongAdder();
+		int entityCount = entitiesMetaData.size();
+		entityNames = new String[entityCount];
+		attempts = createCounters(entityCount);
+		hits = createCounters(entityCount);
+		matchTimes = createCounters(entityCount);
+		fieldLabels = new String[entityCount][];
+		conversions = new LongAdder[entityCount][];
+		conversionTimes = new LongAdder[entityCount][];
+		for (int i = 0; i < entityCount; i++) {
+			EntityMetaData entityMetaData = entitiesMetaData.get(i);
+			entityNames[i] = entityMetaData.getEntityClass().getName();
+			fieldLabels[i] = entityMetaData.getPopulator().getFieldLabels();
+			conversions[i] = createCounters(fieldLabels[i].length);
+			conversionTimes[i] = createCounters(fieldLabels[i].length);
+		}
+		handlerNames = new CopyOnWriteArrayList<String>();
+		handlerHistograms = new CopyOnWriteArrayList<LatencyHistogram>();
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	@Override
+	public long getLines() {
+		return lines.sum();
+	}
+
+	@Override
+	public long getChars() {
+		return chars.sum();
+	}
+
+	@Override
+	public long getElapsedTime() {
+		return System.currentTimeMillis() - startTime;
+	}
+	
+	@Override
+	public double getLinesPerSecond() {
+		return perSecond(getLines());
+	}
+
+	@Override
+	public double getCharsPerSecond() {
+		return perSecond(getChars());
+	}
+
+	@Override
+	public long getMultiPatternMatchTime() {
+		return multiPatternMatchTime.sum();
+	}
+
+	@Override
+	public List<EntityMetrics> getEntities() {
+		List<EntityMetrics> entities = new ArrayList<EntityMetrics>();
+		for (int i = 0; i < entityNames.length; i++) {
+			entities.add(new EntityMetrics(entityNames[i], attempts[i].sum(), hits[i].sum(), matchTimes[i].sum()));
+		}
+		
+		return entities;
+	}
+
+	@Override
+	public List<FieldMetrics> getFields() {
+		List<FieldMetrics> fields = new ArrayList<FieldMetrics>();
+		for (int i = 0; i < entityNames.length; i++) {
+			for (int j = 0; j < fieldLabels[i].length; j++) {
+				fields.add(new FieldMetrics(entityNames[i], fieldLabels[i][j], conversions[i][j].sum(), conversionTimes[i][j].sum()));
+			}
+		}
+		
+		return fields;
+	}
+
+	@Override
+	public List<HandlerMetrics> getHandlers() {
+		List<HandlerMetrics> handlers = new ArrayList<HandlerMetrics>();
+		for (int i = 0; i < handlerNames.size(); i++) {
+			handlers.add(new HandlerMetrics(handlerNames.get(i), handlerHistograms.get(i)));
+		}
+		
+		return handlers;
+	}
+	
+	void recordLine(int length) {
+		lines.increment();
+		chars.add(length);
+	}
+	
+	void recordMultiPatternMatch(long time) {
+		multiPatternMatchTime.add(time);
+	}
+	
+	/**
+	 * Records a match attempt with the match engine.
+	 */
+	void recordAttempt(int entity, long time) {
+		attempts[entity].increment();
+		matchTimes[entity].add(time);
+	}
+	
+	void recordHit(int entity) {
+		hits[entity].increment();
+	}
+	
+	LongAdder[] getConversions(int entity) {
+		return conversions[entity];
+	}
+	
+	LongAdder[] getConversionTimes(int entity) {
+		return conversionTimes[entity];
+	}
+	
+	/**
+	 * Returns a handler that measures the latency of the given handler.
+	 */
+	EntityHandler<?> timeHandler(EntityHandler<?> entityHandler) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		handlerNames.add(entityHandler.getClass().getName());
+		handlerHistograms.add(histogram);
+		
+		return new TimedEntityHandler(entityHandler, histogram);
+	}
+	
+	/**
+	 * Registers this metrics in the platform MBean server. A failed registration (for example
+	 * another parsing with the same name is running) is reported and ignored.
+	 */
+	void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("ro.fortsoft.ff2j:type=Metrics,name=" + ObjectName.quote(name));
+			server.registerMBean(this, objectName);
+			this.objectName = objectName;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		objectName = null;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder buffer = new StringBuilder();
+		buffer.append("lines = " + getLines() + " (" + Math.round(getLinesPerSecond()) + "/s)\n");
+		buffer.append("chars = " + getChars() + " (" + Math.round(getCharsPerSecond()) + "/s)\n");
+		buffer.append("multiPatternMatchTime = " + getMultiPatternMatchTime() / 1000000 + " ms\n");
+		for (EntityMetrics entity : getEntities()) {
+			buffer.append(entity + "\n");
+		}
+		for (FieldMetrics field : getFields()) {
+			buffer.append(field + "\n");
+		}
+		for (HandlerMetrics handler : getHandlers()) {
+			buffer.append(handler + "\n");
+		}
+		
+		return buffer.toString();
+	}
+	
+	private double perSecond(long count) {
+		long elapsedTime = getElapsedTime();
+		
+		return (elapsedTime > 0) ? 1000.0 * count / elapsedTime : 0;
+	}
+	
+	private static LongAdder[] createCounters(int count) {
+		LongAdder[] counters = new LongAdder[count];
+		for (int i = 0; i < count; i++) {
+			counters[i] = new LongAdder();
+		}
+		
+		return counters;
+	}
+	
+	/**
+	 * The match metrics of an entity.
+	 */
+	public static class EntityMetrics {
+		
+		private String entity;
+		private long attempts;
+		private long hits;
+		private long matchTime;
+		
+		public EntityMetrics(String entity, long attempts, long hits, long matchTime) {
+			this.entity = entity;
+			this.attempts = attempts;
+			this.hits = hits;
+			this.matchTime = matchTime;
+		}
+
+		public String getEntity() {
+			return entity;
+		}
+
+		/**
+		 * Returns the number of lines tried with java.util.regex.
+		 */
+		public long getAttempts() {
+			return attempts;
+		}
+
+		/**
+		 * Returns the number of lines mapped to this entity.
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * Returns the time of the regex matching in nanoseconds.
+		 */
+		public long getMatchTime() {
+			return matchTime;
+		}
+
+		@Override
+		public String toString() {
+			return "EntityMetrics [entity=" + entity + ", attempts=" + attempts + ", hits=" + hits 
+					+ ", matchTime=" + matchTime / 1000000 + " ms]";
+		}
+		
+	}
+	
+	/**
+	 * The conversion metrics of a field.
+	 */
+	public static class FieldMetrics {
+		
+		private String entity;
+		private String field;
+		private long conversions;
+		private long conversionTime;
+		
+		public FieldMetrics(String entity, String field, long conversions, long conversionTime) {
+			this.entity = entity;
+			this.field = field;
+			this.conversions = conversions;
+			this.conversionTime = conversionTime;
+		}
+
+		public String getEntity() {
+			return entity;
+		}
+
+		/**
+		 * Returns the name and the converter of the field.
+		 */
+		public String getField() {
+			return field;
+		}
+
+		public long getConversions() {
+			return conversions;
+		}
+
+		/**
+		 * Returns the conversion time in nanoseconds.
+		 */
+		public long getConversionTime() {
+			return conversionTime;
+		}
+
+		@Override
+		public String toString() {
+			return "FieldMetrics [entity=" + entity + ", field=" + field + ", conversions=" + conversions 
+					+ ", conversionTime=" + conversionTime / 1000000 + " ms]";
+		}
+		
+	}
+	
+	/**
+	 * The latency metrics of a handler, in nanoseconds. The percentiles are accurate within a factor of two.
+	 */
+	public static class HandlerMetrics {
+		
+		private String handler;
+		private long count;
+		private long totalTime;
+		private long p50;
+		private long p90;
+		private long p99;
+		private long max;
+		
+		HandlerMetrics(String handler, LatencyHistogram histogram) {
+			this(handler, histogram.getCount(), histogram.getTotal(), histogram.getPercentile(0.5), 
+					histogram.getPercentile(0.9), histogram.getPercentile(0.99), histogram.getMax());
+		}
+		
+		public HandlerMetrics(String handler, long count, long totalTime, long p50, long p90, long p99, long max) {
+			this.handler = handler;
+			this.count = count;
+			this.totalTime = totalTime;
+			this.p50 = p50;
+			this.p90 = p90;
+			this.p99 = p99;
+			this.max = max;
+		}
+
+		public String getHandler() {
+			return handler;
+		}
+
+		/**
+		 * Returns the number of calls (an entity or a batch).
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotalTime() {
+			return totalTime;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP90() {
+			return p90;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "HandlerMetrics [handler=" + handler + ", count=" + count + ", totalTime=" + totalTime / 1000000 
+					+ " ms, p50=" + p50 + ", p90=" + p90 + ", p99=" + p99 + ", max=" + max + "]";
+		}
+		
+	}
+	
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.List;
+
+/**
+ * The live metrics of a parsing, published as an MXBean with the name
+ * <code>ro.fortsoft.ff2j:type=Metrics,name=&lt;name&gt;</code> while the parsing runs.
+ * All times are in nanoseconds.
+ * 
+ * @see FF2J#setMetrics(String)
+ * @author Decebal Suiu
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * Returns the number of lines passed to the mapper.
+	 */
+	public long getLines();
+
+	/**
+	 * Returns the number of characters of the lines, without the line separators.
+	 * It's not the number of bytes read, which depends on the charset and on the line separators of the input.
+	 */
+	public long getChars();
+
+	/**
+	 * Returns the elapsed milliseconds since the start of parsing.
+	 */
+	public long getElapsedTime();
+	
+	public double getLinesPerSecond();
+
+	public double getCharsPerSecond();
+	
+	/**
+	 * Returns the time spent in the multi pattern automaton (see {@link FF2J#setMultiPatternMatching(boolean)}).
+	 */
+	public long getMultiPatternMatchTime();
+
+	/**
+	 * Returns the match attempts, the hits and the match time of each mapped entity.
+	 */
+	public List<Metrics.EntityMetrics> getEntities();
+
+	/**
+	 * Returns the number of conversions and the conversion time of each mapped field.
+	 */
+	public List<Metrics.FieldMetrics> getFields();
+
+	/**
+	 * Returns the latency histogram of each handler.
+	 */
+	public List<Metrics.HandlerMetrics> getHandlers();
+	
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parses several files with the same mapping. The files are cut in chunks, as by {@link ChunkedFileParser}, 
+ * and the chunks of all files share the same fork-join pool and the same window of chunks in progress, 
+ * so the next files are mapped while the current file is delivered and many small files keep all cores busy.
+ * The results are delivered file after file, in file order, from the calling thread.
+ * <p>
+ * A gzip compressed file is inflated and parsed when its turn comes (the inflating is parallel).
+ * <p>
+ * With the file lifecycle and unordered handlers, the chunks of a file are submitted only after the file 
+ * was started, because the unordered handlers receive the entities while the chunks are mapped.
+ * 
+ * @author Decebal Suiu
+ */
+class MultiFileParser {
+
+	private FF2J ff2j;
+	private List<Path> files;
+	private boolean fileLifecycle;
+	/** True if the chunks of a file are submitted only after the file was started */
+	private boolean holdChunks;
+	private ThreadLocal<MappingContext> contexts;
+	private Map<String, FF2J.Statistics> fileStatistics;
+	/** The files in progress, in file order */
+	private Deque<FileTask> tasks;
+	private int nextFile;
+	private int pendingChunks;
+	private long lineCount;
+	
+	public MultiFileParser(FF2J ff2j, List<Path> files, boolean fileLifecycle) {
+		this.ff2j = ff2j;
+		this.files = files;
+		this.fileLifecycle = fileLifecycle;
+		
+		contexts = ChunkedFileParser.createContexts(ff2j);
+		fileStatistics = new LinkedHashMap<String, FF2J.Statistics>();
+		tasks = new ArrayDeque<FileTask>();
+	}
+	
+	/**
+	 * Returns the statistics of the parsed files.
+	 */
+	public Map<String, FF2J.Statistics> getFileStatistics() {
+		return fileStatistics;
+	}
+	
+	/**
+	 * Returns the number of processed lines, for all files.
+	 */
+	public long getLineCount() {
+		return lineCount;
+	}
+	
+	/**
+	 * Returns false if the parsing was stopped by a listener or by a handler.
+	 */
+	public boolean parse() throws Exception {
+		int window = 2 * ff2j.getParallelism();
+		ForkJoinPool pool = new ForkJoinPool(ff2j.getParallelism());
+		holdChunks = fileLifecycle && ff2j.hasUnorderedHandlers();
+		FileTask task = null;
+		try {
+			while (true) {
+				submitChunks(pool, window);
+				task = tasks.peek();
+				if (task == null) {
+					break;
+				}
+				
+				if (!task.started) {
+					startFile(task);
+					submitChunks(pool, window);
+				}
+				if (task.compressed) {
+					if (!parseCompressed(task)) {
+						return false;
+					}
+				} else {
+					Future<FileChunk> future = task.chunks.poll();
+					if (future != null) {
+						pendingChunks--;
+						if (!task.parser.deliver(future.get())) {
+							return false;
+						}
+						continue;
+					}
+				}
+				
+				// all chunks were delivered
+				tasks.poll();
+				FileTask endedTask = task;
+				task = null;
+				if (!endFile(endedTask)) {
+					return false;
+				}
+			}
+		} finally {
+			// stop the running chunks before the handlers are ended
+			for (FileTask pendingTask : tasks) {
+				if (pendingTask.parser != null) {
+					pendingTask.parser.stop();
+				}
+				for (Future<FileChunk> future : pendingTask.chunks) {
+					future.cancel(true);
+				}
+			}
+			ChunkedFileParser.shutdown(pool);
+			if (task != null) {
+				tasks.poll();
+				endFile(task);
+			}
+			for (FileTask pendingTask : tasks) {
+				pendingTask.close();
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Submits the chunks of the current file and opens the next files, while the window is not full.
+	 */
+	private void submitChunks(ForkJoinPool pool, int window) throws IOException {
+		while (pendingChunks < window) {
+			FileTask task = tasks.peekLast();
+			if ((task == null) || task.compressed || (task.position >= task.size)) {
+				if ((nextFile == files.size()) || (tasks.size() > window)) {
+					break;
+				}
+				tasks.add(openFile(files.get(nextFile++)));
+				continue;
+			}
+			if (holdChunks && !task.started) {
+				break;
+			}
+			
+			FileChunk chunk = task.parser.createChunk(task.position, task.size);
+			task.chunks.add(pool.submit(chunk));
+			task.position = chunk.getEnd();
+			pendingChunks++;
+		}
+	}
+	
+	private FileTask openFile(Path path) throws IOException {
+		FileTask task = new FileTask(path);
+		task.channel = FileChannel.open(path, StandardOpenOption.READ);
+		task.size = task.channel.size();
+		task.compressed = GzipDecoder.isGzip(task.channel);
+		if (!task.compressed) {
+			task.parser = new ChunkedFileParser(ff2j, task.channel, contexts);
+			task.position = task.parser.skipLines(ff2j.getSkipLines(), task.size);
+			task.parser.start(task.position, task.parser.getLineNumber());
+		}
+		
+		return task;
+	}
+	
+	private void startFile(FileTask task) {
+		task.started = true;
+		FF2J.Statistics statistics = new FF2J.Statistics();
+		statistics.startLineNumber = ff2j.getSkipLines();
+		if (!task.compressed) {
+			statistics.startOffset = task.position;
+		}
+		statistics.startTime = System.currentTimeMillis();
+		// the entities of this file are counted as a difference
+		statistics.resetCounters(ff2j.getStatistics());
+		task.counters = ff2j.getStatistics().getCounters();
+		task.statistics = statistics;
+		if (!task.compressed) {
+			// the statistics count the lines of all files
+			task.parser.setProgressBase(lineCount - statistics.startLineNumber);
+		}
+		
+		if (fileLifecycle) {
+			ff2j.beforeFirstEntity();
+		}
+	}
+	
+	/**
+	 * Returns false if the delivery of the last batch failed.
+	 */
+	private boolean endFile(FileTask task) {
+		task.close();
+		if (!task.started) {
+			return true;
+		}
+		
+		boolean success = true;
+		if (fileLifecycle) {
+			success = ff2j.afterLastEntity();
+		}
+		
+		FF2J.Statistics statistics = task.statistics;
+		statistics.endTime = System.currentTimeMillis();
+		if (task.compressed) {
+			statistics.endLineNumber = task.lineNumber;
+		} else {
+			statistics.endLineNumber = task.parser.getLineNumber();
+			statistics.endOffset = task.parser.getOffset();
+		}
+		long[] counters = ff2j.getStatistics().getCounters();
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] -= task.counters[i];
+		}
+		statistics.addCounters(counters);
+		lineCount += statistics.endLineNumber - Math.min(statistics.startLineNumber, statistics.endLineNumber);
+		fileStatistics.put(task.path.toString(), statistics);
+		
+		return success;
+	}
+	
+	/**
+	 * Parses a compressed file from the calling thread, as {@link FF2J#parse(java.io.Reader)}.
+	 */
+	private boolean parseCompressed(FileTask task) throws Exception {
+		ParallelGzipInputStream input = new ParallelGzipInputStream(task.channel, ff2j.getParallelism());
+		try {
+			LineReader reader = new LineReader(new InputStreamReader(input, ff2j.getCharset()));
+			MappingContext context = contexts.get();
+			ProgressListener progressListener = ff2j.getProgressListener();
+			long skipLines = ff2j.getSkipLines();
+			long batchMaxLatency = ff2j.getBatchMaxLatency();
+			CharSequence lineText;
+			while ((lineText = reader.readLine()) != null) {
+				task.lineNumber++;
+				if (task.lineNumber > skipLines) {
+					ff2j.getStatistics().setProcessedLineNumber(lineCount + task.lineNumber - skipLines);
+					boolean goNext = true;
+					if (progressListener != null) {
+						goNext = progressListener.inProgress(task.lineNumber);
+					}
+					if (goNext) {
+						goNext = ff2j.onFileLine(task.lineNumber, lineText, context);
+					}
+					if (batchMaxLatency > 0) {
+						ff2j.flushExpiredBatches();
+					}
+					if (!goNext) {
+						return false;
+					}
+				}
+			}
+		} finally {
+			input.close();
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * A file in progress.
+	 */
+	static class FileTask {
+		
+		private Path path;
+		private FileChannel channel;
+		private long size;
+		private boolean compressed;
+		private boolean started;
+		private FF2J.Statistics statistics;
+		/** The entity counters of the parsing when the file started */
+		private long[] counters;
+		
+		/** For a not compressed file */
+		private ChunkedFileParser parser;
+		/** The start of the next chunk */
+		private long position;
+		private Deque<Future<FileChunk>> chunks;
+		
+		/** For a compressed file */
+		private long lineNumber;
+		
+		public FileTask(Path path) {
+			this.path = path;
+			
+			chunks = new ArrayDeque<Future<FileChunk>>();
+		}
+		
+		public void close() {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					// ignore
+				}
+				channel = null;
+			}
+		}
+		
+	}
+	
+}
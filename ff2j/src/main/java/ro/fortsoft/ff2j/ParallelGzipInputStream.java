@@ -0,0 +1,386 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The inflated content of a gzip file, decompressed in parallel. The file is cut in compressed ranges 
+ * on member boundaries. The ranges are inflated on a fork-join pool and returned in file order. Only a limited 
+ * number of ranges (two per worker) are in progress at a time.
+ * <p>
+ * The member boundaries of a BGZF file are read from the block headers. For other multi member files
+ * (concatenated gzip files, parallel gzip writers) the boundaries are found by searching the member headers.
+ * A header found in the compressed data of a member is detected when the previous range doesn't end there, 
+ * the ranges in progress are dropped and the cutting restarts from the real end of that member.
+ * <p>
+ * A member that is larger than a range (a single member file, for example) is inflated 
+ * by a read-ahead thread, so the inflating overlaps with the parsing. After that member the ranges 
+ * are inflated again in parallel.
+ * 
+ * @author Decebal Suiu
+ */
+class ParallelGzipInputStream extends InputStream {
+
+	/** The approximate size in bytes of a compressed range */
+	static final int CHUNK_SIZE = 1024 * 1024;
+	
+	/** The max size in bytes of the inflated content of a range */
+	static final int MAX_CHUNK_LENGTH = 64 * 1024 * 1024;
+	
+	private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+	private static final int READ_AHEAD_BLOCK_SIZE = 256 * 1024;
+	private static final int READ_AHEAD_BLOCKS = 16;
+	private static final byte[] END = new byte[0];
+	
+	private FileChannel channel;
+	private long size;
+	private int parallelism;
+	private boolean bgzf;
+	private ForkJoinPool pool;
+	private Deque<Future<GzipChunk>> pending;
+	/** The start of the next range, always a member boundary */
+	private long position;
+	private boolean endOfData;
+	
+	private ReadAhead readAhead;
+	
+	private byte[] data;
+	private int dataPosition;
+	private int dataLength;
+	private boolean closed;
+	
+	public ParallelGzipInputStream(FileChannel channel, int parallelism) throws IOException {
+		this.channel = channel;
+		this.parallelism = parallelism;
+		
+		size = channel.size();
+		bgzf = (GzipDecoder.getBlockSize(channel, 0) > 0);
+		pending = new ArrayDeque<Future<GzipChunk>>();
+		data = END;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if ((dataPosition == dataLength) && !fill()) {
+			return -1;
+		}
+		
+		return data[dataPosition++] & 0xff;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if ((dataPosition == dataLength) && !fill()) {
+			return -1;
+		}
+		
+		int count = Math.min(len, dataLength - dataPosition);
+		System.arraycopy(data, dataPosition, b, off, count);
+		dataPosition += count;
+		
+		return count;
+	}
+	
+	@Override
+	public int available() {
+		return dataLength - dataPosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		
+		// no interruption, a channel is closed by an interrupted read
+		closed = true;
+		cancelPending();
+		if (pool != null) {
+			pool.shutdown();
+		}
+		if (readAhead != null) {
+			readAhead.cancel();
+		}
+	}
+	
+	/**
+	 * Returns false at the end of data.
+	 */
+	private boolean fill() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		
+		do {
+			if (readAhead != null) {
+				data = readAhead.take();
+				if (data == END) {
+					// the member is finished
+					position = readAhead.getMemberEnd();
+					readAhead = null;
+					data = nextChunk();
+				}
+			} else {
+				data = nextChunk();
+			}
+			if (data == END) {
+				return false;
+			}
+			dataPosition = 0;
+			dataLength = data.length;
+		} while (dataLength == 0);
+		
+		return true;
+	}
+	
+	private byte[] nextChunk() throws IOException {
+		submitChunks();
+		Future<GzipChunk> future = pending.poll();
+		if (future == null) {
+			return END;
+		}
+		
+		GzipChunk chunk;
+		try {
+			chunk = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			// the fork-join pool wraps the checked exceptions
+			for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+			}
+			throw new IOException(e.getCause());
+		}
+		
+		if (chunk.getDecoder() != null) {
+			// the last member continues, it's inflated by a read-ahead thread
+			cancelPending();
+			readAhead = new ReadAhead(chunk.getDecoder());
+			readAhead.start();
+		} else if (chunk.isEndOfData()) {
+			endOfData = true;
+			cancelPending();
+		} else if (chunk.getProcessedEnd() != chunk.getEnd()) {
+			// the end of the range was a false member boundary, the next ranges are wrong
+			cancelPending();
+			position = chunk.getProcessedEnd();
+		}
+		
+		if (chunk.getLength() == chunk.getData().length) {
+			return chunk.getData();
+		}
+		
+		return Arrays.copyOf(chunk.getData(), chunk.getLength());
+	}
+	
+	private void submitChunks() throws IOException {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		
+		int window = 2 * parallelism;
+		while ((pending.size() < window) && (position < size) && !endOfData) {
+			long end = nextMemberStart(position, position + CHUNK_SIZE);
+			pending.add(pool.submit(new GzipChunk(channel, position, end, MAX_CHUNK_LENGTH)));
+			position = end;
+		}
+	}
+	
+	private void cancelPending() {
+		for (Future<GzipChunk> future : pending) {
+			future.cancel(true);
+		}
+		pending.clear();
+	}
+	
+	/**
+	 * Returns the position of the first member (probably) found at or after the given position.
+	 * 
+	 * @param start a member boundary before the position
+	 */
+	private long nextMemberStart(long start, long position) throws IOException {
+		if (bgzf) {
+			long blockStart = start;
+			while (blockStart < position) {
+				int blockSize = GzipDecoder.getBlockSize(channel, blockStart);
+				if (blockSize < 0) {
+					// not BGZF from here 
+					return findMemberStart(blockStart + 1);
+				}
+				blockStart += blockSize;
+			}
+			
+			return Math.min(blockStart, size);
+		}
+		
+		return findMemberStart(position);
+	}
+	
+	/**
+	 * Returns the position of the first member header found at or after the given position.
+	 */
+	private long findMemberStart(long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		while (position < size) {
+			buffer.clear();
+			int count = channel.read(buffer, position);
+			if (count < 0) {
+				break;
+			}
+			for (int i = 0; i < count - 2; i++) {
+				if ((buffer.get(i) == 0x1f) && (buffer.get(i + 1) == (byte) 0x8b) && (buffer.get(i + 2) == 8)
+						&& GzipDecoder.isMemberStart(channel, position + i)) {
+					return position + i;
+				}
+			}
+			// the magic number may cross the buffer's end
+			position += Math.max(1, count - 2);
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Inflates the rest of a member in progress and hands the inflated blocks through a bounded queue.
+	 */
+	class ReadAhead extends Thread {
+		
+		private GzipDecoder decoder;
+		private BlockingQueue<byte[]> blocks;
+		private volatile IOException error;
+		private volatile boolean cancelled;
+		private long memberEnd;
+		
+		public ReadAhead(GzipDecoder decoder) {
+			super("ff2j-gzip-reader");
+			setDaemon(true);
+			
+			this.decoder = decoder;
+			
+			decoder.setLimit(size);
+			blocks = new ArrayBlockingQueue<byte[]>(READ_AHEAD_BLOCKS);
+		}
+		
+		public byte[] take() throws IOException {
+			byte[] block;
+			try {
+				block = blocks.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if (block == END) {
+				// for the next calls
+				blocks.offer(END);
+				if (error != null) {
+					throw error;
+				}
+			}
+			
+			return block;
+		}
+		
+		/**
+		 * Returns the position in file after the member, valid after the last block was taken.
+		 */
+		public long getMemberEnd() {
+			return memberEnd;
+		}
+		
+		public void cancel() {
+			cancelled = true;
+			blocks.clear();
+		}
+		
+		@Override
+		public void run() {
+			try {
+				inflate();
+			} catch (IOException e) {
+				error = e;
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				decoder.end();
+			}
+			
+			try {
+				put(END);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+		}
+		
+		private void inflate() throws IOException, InterruptedException {
+			byte[] block = new byte[READ_AHEAD_BLOCK_SIZE];
+			int length = 0;
+			while (true) {
+				int count = decoder.inflate(block, length, block.length - length);
+				if (count > 0) {
+					length += count;
+					if (length == block.length) {
+						if (!put(block)) {
+							return;
+						}
+						block = new byte[READ_AHEAD_BLOCK_SIZE];
+						length = 0;
+					}
+				} else if (count < 0) {
+					memberEnd = decoder.getMemberEnd();
+					break;
+				} else {
+					throw new IOException("Unexpected end of gzip data");
+				}
+			}
+			if (length > 0) {
+				put(Arrays.copyOf(block, length));
+			}
+		}
+		
+		/**
+		 * Returns false if the stream was closed.
+		 */
+		private boolean put(byte[] block) throws InterruptedException {
+			while (!cancelled) {
+				if (blocks.offer(block, 100, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses a stream of lines in a pipeline: a reader thread reads the lines, several worker threads map them
+ * and the calling thread delivers the results in order. The stages are connected by a ring of preallocated 
+ * slots, each slot holding a batch of lines. The reader waits for a free slot and the workers wait for 
+ * a filled slot, so a slow stage slows down the others (backpressure) and the memory stays bounded.
+ * <p>
+ * A slot goes through the states FREE (reused by the reader), FILLED (lines read) and MAPPED (entities created).
+ * The slot with the sequence number s is ring[s % ring.length]; each stage processes the sequences in order
+ * (the workers claim them with a counter).
+ * 
+ * @author Decebal Suiu
+ */
+class PipelinedParser {
+
+	/** The max number of lines in a slot */
+	static final int BATCH_SIZE = 256;
+	
+	private static final int FREE = 0;
+	private static final int FILLED = 1;
+	private static final int MAPPED = 2;
+	
+	private FF2J ff2j;
+	private Reader input;
+	private Slot[] ring;
+	private AtomicLong nextToMap;
+	private volatile boolean stopped;
+	private long lineNumber;
+	
+	public PipelinedParser(FF2J ff2j, Reader input) {
+		this.ff2j = ff2j;
+		this.input = input;
+		
+		nextToMap = new AtomicLong();
+	}
+
+	/**
+	 * Returns the number of the last processed line.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+	
+	/**
+	 * Returns false if the parsing was stopped by a listener or by a handler.
+	 */
+	public boolean parse() throws Exception {
+		int workers = ff2j.getParallelism();
+		ring = new Slot[2 * workers + 2];
+		for (int i = 0; i < ring.length; i++) {
+			// as if the slot was released by the dispatcher
+			ring[i] = new Slot(i - ring.length);
+		}
+		
+		Thread[] threads = new Thread[workers + 1];
+		threads[0] = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				read();
+			}
+			
+		}, "ff2j-reader");
+		for (int i = 1; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					map();
+				}
+				
+			}, "ff2j-mapper-" + i);
+		}
+		for (Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		try {
+			return dispatch();
+		} finally {
+			stop();
+			// the input is not used after the parsing returns, the reader thread ends after its current read
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+	}
+
+	/**
+	 * The reader stage.
+	 */
+	private void read() {
+		LineReader reader = new LineReader(input);
+		long readLineNumber = 0;
+		long sequence = 0;
+		boolean end = false;
+		while (!end) {
+			Slot slot = ring[(int) (sequence % ring.length)];
+			if (!await(slot, FREE, sequence - ring.length)) {
+				return;
+			}
+			
+			slot.clear(sequence, readLineNumber + 1);
+			try {
+				// the skipped lines are read in the first slot, before any line is added
+				while (readLineNumber < ff2j.getSkipLines()) {
+					if (reader.readLine() == null) {
+						break;
+					}
+					readLineNumber++;
+					slot.firstLineNumber++;
+				}
+				
+				while (slot.count < BATCH_SIZE) {
+					CharSequence lineText = reader.readLine();
+					if (lineText == null) {
+						end = true;
+						break;
+					}
+					readLineNumber++;
+					slot.add(lineText);
+					// don't keep the lines while waiting for the input
+					if (!reader.ready()) {
+						break;
+					}
+				}
+			} catch (Throwable t) {
+				slot.error = (t instanceof Exception) ? (Exception) t : new Exception(t);
+				end = true;
+			}
+			slot.last = end;
+			publish(slot, FILLED);
+			sequence++;
+		}
+	}
+	
+	/**
+	 * The mapper stage (one per worker thread).
+	 */
+	private void map() {
+		Mapper mapper = ff2j.getMapper();
+		MappingContext context = mapper.createContext();
+		CharArraySequence lineText = new CharArraySequence();
+		while (true) {
+			long sequence = nextToMap.getAndIncrement();
+			Slot slot = ring[(int) (sequence % ring.length)];
+			if (!await(slot, FILLED, sequence)) {
+				return;
+			}
+			
+			for (int i = 0; i < slot.count; i++) {
+				lineText.reset(slot.chars, slot.lineStarts[i], slot.lineStarts[i + 1] - slot.lineStarts[i]);
+				try {
+					slot.entities[i] = mapper.mapEntity(lineText, context);
+				} catch (Throwable t) {
+					slot.error = (t instanceof Exception) ? (Exception) t : new Exception(t);
+					slot.errorIndex = i;
+					break;
+				}
+			}
+			publish(slot, MAPPED);
+		}
+	}
+	
+	/**
+	 * The dispatcher stage, on the calling thread.
+	 */
+	private boolean dispatch() throws Exception {
+		ProgressListener progressListener = ff2j.getProgressListener();
+		NoEntityHandler noEntityHandler = ff2j.getNoEntityHandler();
+		boolean flushBatches = (ff2j.getBatchMaxLatency() > 0);
+		FF2J.Statistics statistics = ff2j.getStatistics();
+		long sequence = 0;
+		while (true) {
+			Slot slot = ring[(int) (sequence % ring.length)];
+			if (!await(slot, MAPPED, sequence)) {
+				throw new InterruptedException();
+			}
+			
+			lineNumber = slot.firstLineNumber - 1;
+			int count = (slot.errorIndex >= 0) ? slot.errorIndex : slot.count;
+			for (int i = 0; i < count; i++) {
+				lineNumber++;
+				statistics.setProcessedLineNumber(lineNumber);
+				if ((progressListener != null) && !progressListener.inProgress(lineNumber)) {
+					return false;
+				}
+				Object entity = slot.entities[i];
+				if (entity != null) {
+					slot.entities[i] = null;
+					ff2j.handleEntity(entity);
+				} else if ((noEntityHandler != null) && !noEntityHandler.handleNoEntity(lineNumber, slot.getLineText(i))) {
+					return false;
+				}
+				if (flushBatches) {
+					ff2j.flushExpiredBatches();
+				}
+			}
+			
+			if (slot.error != null) {
+				if (slot.errorIndex >= 0) {
+					// the line that failed
+					lineNumber++;
+				}
+				throw slot.error;
+			}
+			if (slot.last) {
+				return true;
+			}
+			
+			publish(slot, FREE);
+			sequence++;
+		}
+	}
+	
+	/**
+	 * Waits until the slot has the given state and sequence. Returns false if the pipeline was stopped.
+	 */
+	private boolean await(Slot slot, int state, long sequence) {
+		synchronized (slot) {
+			while ((slot.state != state) || (slot.sequence != sequence)) {
+				if (stopped) {
+					return false;
+				}
+				try {
+					slot.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	private void publish(Slot slot, int state) {
+		synchronized (slot) {
+			slot.state = state;
+			slot.notifyAll();
+		}
+	}
+	
+	private void stop() {
+		stopped = true;
+		for (Slot slot : ring) {
+			synchronized (slot) {
+				slot.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * A batch of lines with their entities. The buffers are reused.
+	 */
+	static class Slot {
+		
+		private int state;
+		/** The sequence number of the batch in this slot */
+		private long sequence;
+		private long firstLineNumber;
+		private int count;
+		/** The chars of all lines */
+		private char[] chars;
+		/** The start of each line in chars, the line i ends at lineStarts[i + 1] */
+		private int[] lineStarts;
+		private Object[] entities;
+		private boolean last;
+		private Exception error;
+		/** The index of the line that failed the mapping (-1 if the error is not a mapping error) */
+		private int errorIndex;
+		
+		public Slot(long sequence) {
+			this.sequence = sequence;
+			
+			state = FREE;
+			chars = new char[BATCH_SIZE * 128];
+			lineStarts = new int[BATCH_SIZE + 1];
+			entities = new Object[BATCH_SIZE];
+		}
+		
+		public void clear(long sequence, long firstLineNumber) {
+			this.sequence = sequence;
+			this.firstLineNumber = firstLineNumber;
+			count = 0;
+			last = false;
+			error = null;
+			errorIndex = -1;
+		}
+		
+		public void add(CharSequence lineText) {
+			int start = lineStarts[count];
+			int length = lineText.length();
+			if (start + length > chars.length) {
+				chars = Arrays.copyOf(chars, Math.max(2 * chars.length, start + length));
+			}
+			for (int i = 0; i < length; i++) {
+				chars[start + i] = lineText.charAt(i);
+			}
+			count++;
+			lineStarts[count] = start + length;
+		}
+		
+		public String getLineText(int index) {
+			return new String(chars, lineStarts[index], lineStarts[index + 1] - lineStarts[index]);
+		}
+		
+	}
+	
+}
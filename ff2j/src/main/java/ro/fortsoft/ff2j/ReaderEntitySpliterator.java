@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the entities mapped from the lines of a reader. The lines are read only when 
+ * an entity is requested.
+ * 
+ * @author Decebal Suiu
+ */
+class ReaderEntitySpliterator extends Spliterators.AbstractSpliterator<Object> {
+
+	private FF2J ff2j;
+	private LineReader reader;
+	private MappingContext context;
+	private boolean skipped;
+	
+	public ReaderEntitySpliterator(FF2J ff2j, Reader input) {
+		super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+		
+		this.ff2j = ff2j;
+		
+		reader = new LineReader(input);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Object> action) {
+		Mapper mapper = ff2j.getMapper();
+		if (context == null) {
+			context = mapper.createContext();
+		}
+		
+		try {
+			if (!skipped) {
+				skipped = true;
+				for (long i = 0; i < ff2j.getSkipLines(); i++) {
+					if (reader.readLine() == null) {
+						return false;
+					}
+				}
+			}
+			
+			CharSequence lineText;
+			while ((lineText = reader.readLine()) != null) {
+				Object entity = mapper.mapEntity(lineText, context);
+				if (entity != null) {
+					action.accept(entity);
+					return true;
+				}
+			}
+			
+			return false;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
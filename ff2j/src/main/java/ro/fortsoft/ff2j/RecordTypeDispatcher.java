@@ -0,0 +1,233 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the entities of a line by its record type. The record types of the entities are grouped by
+ * column range (start and length) and each range has a hash table from the record type to the entities,
+ * looked up with the chars of the line (no substring). The entities without record type are candidates 
+ * for every line.
+ * 
+ * @author Decebal Suiu
+ */
+class RecordTypeDispatcher {
+
+	private static final int[] NO_ENTITIES = new int[0];
+	
+	private Range[] ranges;
+	/** The entities without record type */
+	private int[] anyRecordType;
+	private int entityCount;
+	
+	public RecordTypeDispatcher(List<EntityMetaData> entitiesMetaData) {
+		entityCount = entitiesMetaData.size();
+		
+		// group the entities by column range and record type
+		Map<Long, Map<String, List<Integer>>> rangeEntities = new LinkedHashMap<Long, Map<String, List<Integer>>>();
+		List<Integer> others = new ArrayList<Integer>();
+		for (int i = 0; i < entityCount; i++) {
+			EntityMetaData entityMetaData = entitiesMetaData.get(i);
+			String recordType = entityMetaData.getRecordType();
+			if (recordType == null) {
+				others.add(i);
+				continue;
+			}
+			
+			Long range = ((long) entityMetaData.getRecordTypeStart() << 32) | recordType.length();
+			Map<String, List<Integer>> recordTypes = rangeEntities.get(range);
+			if (recordTypes == null) {
+				recordTypes = new LinkedHashMap<String, List<Integer>>();
+				rangeEntities.put(range, recordTypes);
+			}
+			List<Integer> entities = recordTypes.get(recordType);
+			if (entities == null) {
+				entities = new ArrayList<Integer>();
+				recordTypes.put(recordType, entities);
+			}
+			entities.add(i);
+		}
+		
+		ranges = new Range[rangeEntities.size()];
+		int index = 0;
+		for (Map.Entry<Long, Map<String, List<Integer>>> entry : rangeEntities.entrySet()) {
+			long range = entry.getKey();
+			ranges[index++] = new Range((int) (range >>> 32), (int) range, entry.getValue());
+		}
+		anyRecordType = toArray(others);
+	}
+	
+	/**
+	 * Returns true if at least one entity has a record type.
+	 */
+	public static boolean isUsed(List<EntityMetaData> entitiesMetaData) {
+		for (EntityMetaData entityMetaData : entitiesMetaData) {
+			if (entityMetaData.getRecordType() != null) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	public Scratch createScratch() {
+		return new Scratch(entityCount);
+	}
+	
+	/**
+	 * Collects in the scratch the entities that can match the line. 
+	 */
+	public void select(CharSequence lineText, Scratch scratch) {
+		scratch.clear();
+		for (Range range : ranges) {
+			for (int entity : range.lookup(lineText)) {
+				scratch.add(entity);
+			}
+		}
+		for (int entity : anyRecordType) {
+			scratch.add(entity);
+		}
+	}
+	
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		
+		return array;
+	}
+	
+	/**
+	 * The candidate entities of a line, reused by a thread for all lines.
+	 */
+	static class Scratch {
+		
+		private int[] candidates;
+		private int count;
+		/** The candidates are the entities with the current stamp (no clearing between lines) */
+		private int[] stamps;
+		private int stamp;
+		
+		public Scratch(int entityCount) {
+			candidates = new int[entityCount];
+			stamps = new int[entityCount];
+		}
+		
+		/**
+		 * Returns the number of candidate entities.
+		 */
+		public int getCount() {
+			return count;
+		}
+		
+		/**
+		 * Returns the candidate with the given index (the candidates are not in the entity order).
+		 */
+		public int getCandidate(int index) {
+			return candidates[index];
+		}
+		
+		public boolean isCandidate(int entityIndex) {
+			return stamps[entityIndex] == stamp;
+		}
+		
+		void clear() {
+			count = 0;
+			if (++stamp == 0) {
+				// the stamps wrapped
+				Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+		}
+		
+		void add(int entityIndex) {
+			candidates[count++] = entityIndex;
+			stamps[entityIndex] = stamp;
+		}
+		
+	}
+	
+	/**
+	 * The record types found at the same column range, in an open addressing hash table.
+	 */
+	static class Range {
+		
+		private int start;
+		private int length;
+		private char[][] keys;
+		private int[][] values;
+		private int mask;
+		
+		public Range(int start, int length, Map<String, List<Integer>> recordTypes) {
+			this.start = start;
+			this.length = length;
+			
+			int capacity = Integer.highestOneBit(Math.max(1, recordTypes.size()) * 2) * 2;
+			keys = new char[capacity][];
+			values = new int[capacity][];
+			mask = capacity - 1;
+			for (Map.Entry<String, List<Integer>> entry : recordTypes.entrySet()) {
+				String recordType = entry.getKey();
+				int slot = recordType.hashCode() & mask;
+				while (keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = recordType.toCharArray();
+				values[slot] = toArray(entry.getValue());
+			}
+		}
+		
+		/**
+		 * Returns the entities whose record type is at this range in the line.
+		 */
+		public int[] lookup(CharSequence lineText) {
+			int end = start + length;
+			if (lineText.length() < end) {
+				return NO_ENTITIES;
+			}
+			
+			// the same hash as String.hashCode()
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + lineText.charAt(i);
+			}
+			int slot = hash & mask;
+			while (keys[slot] != null) {
+				if (matches(keys[slot], lineText)) {
+					return values[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			
+			return NO_ENTITIES;
+		}
+		
+		private boolean matches(char[] key, CharSequence lineText) {
+			for (int i = 0; i < length; i++) {
+				if (lineText.charAt(start + i) != key[i]) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+	}
+	
+}
@@ -28,4 +28,22 @@ public @interface RegexEntity {
 
 	String pattern() default "PATTERN";
 	
+	/**
+	 * The text that identifies the lines of this entity (a record code like "D" or a keyword at a known column),
+	 * empty for no record type. When record types are used, a line is matched only against the patterns 
+	 * of the entities with its record type (and of the entities without record type).
+	 */
+	String recordType() default "";
+	
+	/**
+	 * The column (zero based) of the record type.
+	 */
+	int recordTypeStart() default 0;
+	
+	/**
+	 * The entities with a higher priority are tried first. The entities with the same 
+	 * priority are tried in the order in which they were mapped.
+	 */
+	int priority() default 0;
+	
 }
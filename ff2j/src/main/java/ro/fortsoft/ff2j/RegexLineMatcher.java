@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matches the lines with the pattern of a {@link RegexEntity}. The matcher is reused for all lines.
+ * 
+ * @author Decebal Suiu
+ */
+class RegexLineMatcher implements LineMatcher {
+
+	private Matcher matcher;
+	
+	public RegexLineMatcher(Pattern pattern) {
+		matcher = pattern.matcher("");
+	}
+	
+	@Override
+	public MatchResult match(CharSequence lineText) {
+		return matcher.reset(lineText).matches() ? matcher : null;
+	}
+	
+}
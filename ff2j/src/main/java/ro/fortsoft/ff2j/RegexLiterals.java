@@ -0,0 +1,272 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Extracts the mandatory literals of a regular expression, the substrings that appear in any text
+ * matched by the expression. The analysis is conservative: an expression that uses alternations, 
+ * inline flags, look-arounds or other special constructs contributes fewer (or no) literals.
+ * 
+ * @author Decebal Suiu
+ */
+class RegexLiterals {
+
+	private String regex;
+	private int index;
+	
+	private RegexLiterals(String regex) {
+		this.regex = regex;
+	}
+	
+	/**
+	 * Returns the mandatory literals of the regular expression (a regular expression compiled without flags).
+	 */
+	public static List<String> extract(String regex) {
+		try {
+			RegexLiterals parser = new RegexLiterals(regex);
+			List<String> literals = parser.parseAlternation();
+			if (parser.index < regex.length()) {
+				return Collections.emptyList();
+			}
+			
+			return literals;
+		} catch (UnsupportedOperationException e) {
+			return Collections.emptyList();
+		} catch (IndexOutOfBoundsException e) {
+			return Collections.emptyList();
+		}
+	}
+	
+	private List<String> parseAlternation() {
+		List<String> literals = parseSequence();
+		if (peek('|')) {
+			// the literals of the branches are not mandatory
+			while (peek('|')) {
+				index++;
+				parseSequence();
+			}
+			literals = Collections.emptyList();
+		}
+		
+		return literals;
+	}
+	
+	private List<String> parseSequence() {
+		List<String> literals = new ArrayList<String>();
+		StringBuilder run = new StringBuilder();
+		while ((index < regex.length()) && !peek('|') && !peek(')')) {
+			char c = regex.charAt(index);
+			if (c == '(') {
+				index++;
+				if (peek('?')) {
+					if ((index + 1 < regex.length()) && (regex.charAt(index + 1) == ':')) {
+						index += 2;
+					} else {
+						// inline flags, look-arounds, named groups, ...
+						throw new UnsupportedOperationException();
+					}
+				}
+				List<String> groupLiterals = parseAlternation();
+				expect(')');
+				flush(run, literals);
+				if (parseQuantifier() != 0) {
+					literals.addAll(groupLiterals);
+				}
+			} else if (c == '[') {
+				skipCharacterClass();
+				parseQuantifier();
+				flush(run, literals);
+			} else if ((c == '.') || (c == '^') || (c == '$')) {
+				index++;
+				parseQuantifier();
+				flush(run, literals);
+			} else if (c == '\\') {
+				index++;
+				String text = parseEscape();
+				if (text == null) {
+					parseQuantifier();
+					flush(run, literals);
+				} else {
+					appendLiteral(text, run, literals);
+				}
+			} else if ((c == '*') || (c == '+') || (c == '?') || (c == '{')) {
+				throw new UnsupportedOperationException();
+			} else {
+				index++;
+				appendLiteral(String.valueOf(c), run, literals);
+			}
+		}
+		flush(run, literals);
+		
+		return literals;
+	}
+
+	/**
+	 * The quantifier (if any) applies only to the last character of the literal text.
+	 */
+	private void appendLiteral(String text, StringBuilder run, List<String> literals) {
+		int min = parseQuantifier();
+		if (min < 0) {
+			run.append(text);
+		} else {
+			run.append(text, 0, text.length() - 1);
+			if (min > 0) {
+				run.append(text.charAt(text.length() - 1));
+			}
+			flush(run, literals);
+		}
+	}
+	
+	/**
+	 * Returns the literal text of an escape sequence or null if the sequence isn't a literal.
+	 */
+	private String parseEscape() {
+		char c = regex.charAt(index++);
+		switch (c) {
+			case 't': return "\t";
+			case 'n': return "\n";
+			case 'r': return "\r";
+			case 'f': return "\f";
+			case 'a': return "\u0007";
+			case 'e': return "\u001B";
+			case 'Q': {
+				int end = regex.indexOf("\\E", index);
+				if (end < 0) {
+					end = regex.length();
+				}
+				String text = regex.substring(index, end);
+				index = Math.min(end + 2, regex.length());
+				if (text.isEmpty()) {
+					throw new UnsupportedOperationException();
+				}
+				return text;
+			}
+			case 'p':
+			case 'P':
+				if (peek('{')) {
+					index = regex.indexOf('}', index) + 1;
+					if (index == 0) {
+						throw new UnsupportedOperationException();
+					}
+				} else {
+					index++;
+				}
+				return null;
+			case 'k':
+			case 'u':
+			case 'x':
+			case 'c':
+			case '0':
+				throw new UnsupportedOperationException();
+		}
+		
+		if (Character.isDigit(c)) {
+			// back reference
+			while ((index < regex.length()) && Character.isDigit(regex.charAt(index))) {
+				index++;
+			}
+			return null;
+		}
+		if (Character.isLetter(c)) {
+			// predefined character classes and boundary matchers
+			return null;
+		}
+		
+		return String.valueOf(c);
+	}
+	
+	/**
+	 * Returns -1 if there is no quantifier, otherwise the minimum number of occurrences.
+	 */
+	private int parseQuantifier() {
+		if (index >= regex.length()) {
+			return -1;
+		}
+		
+		int min;
+		char c = regex.charAt(index);
+		if ((c == '?') || (c == '*')) {
+			index++;
+			min = 0;
+		} else if (c == '+') {
+			index++;
+			min = 1;
+		} else if (c == '{') {
+			int end = regex.indexOf('}', index);
+			if (end < 0) {
+				throw new UnsupportedOperationException();
+			}
+			String bounds = regex.substring(index + 1, end);
+			int comma = bounds.indexOf(',');
+			try {
+				min = Integer.parseInt((comma < 0) ? bounds.trim() : bounds.substring(0, comma).trim());
+			} catch (NumberFormatException e) {
+				throw new UnsupportedOperationException();
+			}
+			index = end + 1;
+		} else {
+			return -1;
+		}
+		
+		// lazy or possessive
+		if (peek('?') || peek('+')) {
+			index++;
+		}
+		
+		return min;
+	}
+	
+	private void skipCharacterClass() {
+		expect('[');
+		if (peek('^')) {
+			index++;
+		}
+		if (peek(']')) {
+			index++;
+		}
+		while (!peek(']')) {
+			char c = regex.charAt(index);
+			if (c == '\\') {
+				index += 2;
+			} else if (c == '[') {
+				skipCharacterClass();
+			} else {
+				index++;
+			}
+		}
+		index++;
+	}
+	
+	private boolean peek(char c) {
+		return (index < regex.length()) && (regex.charAt(index) == c);
+	}
+	
+	private void expect(char c) {
+		if (!peek(c)) {
+			throw new UnsupportedOperationException();
+		}
+		index++;
+	}
+	
+	private void flush(StringBuilder run, List<String> literals) {
+		if (run.length() > 0) {
+			literals.add(run.toString());
+			run.setLength(0);
+		}
+	}
+	
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import java.util.List;
+
+/**
+ * Measures the latency of a handler, for the metrics.
+ * 
+ * @author Decebal Suiu
+ */
+class TimedEntityHandler implements BatchEntityHandler<Object> {
+
+	private EntityHandler<Object> entityHandler;
+	private LatencyHistogram histogram;
+	
+	@SuppressWarnings("unchecked")
+	public TimedEntityHandler(EntityHandler<?> entityHandler, LatencyHistogram histogram) {
+		this.entityHandler = (EntityHandler<Object>) entityHandler;
+		this.histogram = histogram;
+	}
+
+	@Override
+	public void beforeFirstEntity() {
+		entityHandler.beforeFirstEntity();
+	}
+
+	@Override
+	public void handleEntity(Object entity) {
+		long start = System.nanoTime();
+		try {
+			entityHandler.handleEntity(entity);
+		} finally {
+			histogram.record(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public void handleEntities(List<Object> entities) {
+		long start = System.nanoTime();
+		try {
+			((BatchEntityHandler<Object>) entityHandler).handleEntities(entities);
+		} finally {
+			histogram.record(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public void afterLastEntity() {
+		entityHandler.afterLastEntity();
+	}
+	
+}
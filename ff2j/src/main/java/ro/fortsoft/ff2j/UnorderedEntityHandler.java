@@ -0,0 +1,24 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+/**
+ * Marker interface for an entity handler that accepts the entities in any order. 
+ * When a file is parsed in parallel, FF2J calls handleEntity() from the worker threads, 
+ * as soon as an entity is mapped, so the implementation must be thread safe.
+ * 
+ * @see FF2J#parse(java.nio.channels.FileChannel)
+ * @author Decebal Suiu
+ */
+public interface UnorderedEntityHandler<T> extends EntityHandler<T> {
+}
@@ -15,7 +15,7 @@ package ro.fortsoft.ff2j.converter;
 /**
  * @author Decebal Suiu
  */
-public class BooleanConverter implements Converter<Boolean> {
+public class BooleanConverter implements Converter<Boolean>, ToBooleanConverter {
 
     public static final BooleanConverter TRUE_FALSE = new BooleanConverter("true", "false", false);
     public static final BooleanConverter YES_NO = new BooleanConverter("yes", "no", false);
@@ -44,4 +44,29 @@ public class BooleanConverter implements Converter<Boolean> {
         }
 	}
 
+	@Override
+	public boolean decodeBoolean(CharSequence text, int start, int end) {
+		int length = end - start;
+		if (length != positive.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(start + i);
+			char p = positive.charAt(i);
+			if ((c != p) && (caseSensitive || !equalsIgnoreCase(c, p))) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private static boolean equalsIgnoreCase(char c1, char c2) {
+		// the same rule as String.equalsIgnoreCase
+		char u1 = Character.toUpperCase(c1);
+		char u2 = Character.toUpperCase(c2);
+		
+		return (u1 == u2) || (Character.toLowerCase(u1) == Character.toLowerCase(u2));
+	}
+	
 }
@@ -18,6 +18,11 @@ import java.util.Map;
 import java.util.Set;
 
 /**
+ * The converters for the field types. Each FF2J instance has its own registry, created from 
+ * the shared registry ({@link #getInstance()}), so a converter registered on a FF2J instance 
+ * is used only by that instance. The converters are looked up when the entity classes are mapped,
+ * not while parsing.
+ * 
  * @author Decebal Suiu
  */
 public class ConverterRegistry {
@@ -30,6 +35,13 @@ public class ConverterRegistry {
     	registerDefaultConverters();
     }
     
+    /**
+     * Creates a registry with the converters of the parent registry.
+     */
+    public ConverterRegistry(ConverterRegistry parent) {
+    	converters.putAll(parent.converters);
+    }
+    
     public static ConverterRegistry getInstance() {
         return instance;
     }
@@ -17,26 +17,35 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 
 /**
+ * A thread safe date converter (SimpleDateFormat isn't thread safe so each thread uses its own instance).
+ * 
  * @author Decebal Suiu
  */
 public class DateConverter implements Converter<Date> {
 
 	public static final String DEFAULT_PATTERN = "dd/MM/yyyy";
 	
-    private SimpleDateFormat dateFormat;
+    private ThreadLocal<SimpleDateFormat> dateFormat;
 
     public DateConverter() {
         this(DEFAULT_PATTERN);
 	}
 
-    public DateConverter(String pattern) {
-        this.dateFormat = new SimpleDateFormat(pattern);
+    public DateConverter(final String pattern) {
+        this.dateFormat = new ThreadLocal<SimpleDateFormat>() {
+
+			@Override
+			protected SimpleDateFormat initialValue() {
+				return new SimpleDateFormat(pattern);
+			}
+        	
+        };
     }
 
 	@Override
 	public Date decode(String text) {
 		try {
-			return dateFormat.parse(text);
+			return dateFormat.get().parse(text);
 		} catch (ParseException e) {
 			throw new ConversionException(e);
 		}
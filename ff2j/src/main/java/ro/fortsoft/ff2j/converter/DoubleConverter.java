@@ -15,7 +15,7 @@ package ro.fortsoft.ff2j.converter;
 /**
  * @author Decebal Suiu
  */
-public class DoubleConverter implements Converter<Double> {
+public class DoubleConverter implements Converter<Double>, ToDoubleConverter {
 
 	@Override
 	public Double decode(String text) {
@@ -26,4 +26,9 @@ public class DoubleConverter implements Converter<Double> {
 		}
 	}
 
+	@Override
+	public double decodeDouble(CharSequence text, int start, int end) {
+		return NumberParser.parseDouble(text, start, end);
+	}
+	
 }
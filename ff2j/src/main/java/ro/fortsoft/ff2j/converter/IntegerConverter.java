@@ -15,7 +15,7 @@ package ro.fortsoft.ff2j.converter;
 /**
  * @author Decebal Suiu
  */
-public class IntegerConverter implements Converter<Integer> {
+public class IntegerConverter implements Converter<Integer>, ToIntConverter {
 
 	@Override
 	public Integer decode(String text) {
@@ -26,4 +26,9 @@ public class IntegerConverter implements Converter<Integer> {
 		}
 	}
 
+	@Override
+	public int decodeInt(CharSequence text, int start, int end) {
+		return NumberParser.parseInt(text, start, end);
+	}
+	
 }
@@ -15,7 +15,7 @@ package ro.fortsoft.ff2j.converter;
 /**
  * @author Decebal Suiu
  */
-public class LongConverter implements Converter<Long> {
+public class LongConverter implements Converter<Long>, ToLongConverter {
 
 	@Override
 	public Long decode(String text) {
@@ -26,4 +26,9 @@ public class LongConverter implements Converter<Long> {
 		}
 	}
 
+	@Override
+	public long decodeLong(CharSequence text, int start, int end) {
+		return NumberParser.parseLong(text, start, end);
+	}
+	
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.converter;
+
+/**
+ * Parses numbers from a range of a {@link CharSequence}, with the same rules as {@link Integer#parseInt(String)},
+ * {@link Long#parseLong(String)} and {@link Double#parseDouble(String)}, but without creating a string 
+ * (except for the doubles that are not simple decimals).
+ * 
+ * @author Decebal Suiu
+ */
+class NumberParser {
+
+	/** The powers of ten that are exactly represented as a double */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	/** The mantissas up to this value are exactly represented as a double */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	
+	private NumberParser() {
+	}
+	
+	public static int parseInt(CharSequence text, int start, int end) {
+		long value = parseLong(text, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		
+		return (int) value;
+	}
+	
+	public static long parseLong(CharSequence text, int start, int end) {
+		return parseLong(text, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+	
+	public static double parseDouble(CharSequence text, int start, int end) {
+		// fast path for [+-]digits[.digits] with an exact mantissa, a division of two 
+		// exact doubles is correctly rounded 
+		int i = start;
+		boolean negative = false;
+		if ((i < end) && ((text.charAt(i) == '-') || (text.charAt(i) == '+'))) {
+			negative = (text.charAt(i) == '-');
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; i < end; i++) {
+			char c = text.charAt(i);
+			if ((c >= '0') && (c <= '9')) {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (fractionDigits >= 0) {
+					fractionDigits++;
+				}
+				if (mantissa > MAX_EXACT_MANTISSA) {
+					break;
+				}
+			} else if ((c == '.') && (fractionDigits < 0)) {
+				fractionDigits = 0;
+			} else {
+				break;
+			}
+		}
+		if ((i == end) && (digits > 0) && (fractionDigits < POWERS_OF_TEN.length)) {
+			double value = (fractionDigits > 0) ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+			
+			return negative ? -value : value;
+		}
+		
+		try {
+			return Double.parseDouble(text.subSequence(start, end).toString());
+		} catch (NumberFormatException e) {
+			throw new ConversionException(e);
+		}
+	}
+	
+	private static long parseLong(CharSequence text, int start, int end, long min, long max) {
+		if (start >= end) {
+			throw error(text, start, end);
+		}
+		
+		int i = start;
+		boolean negative = false;
+		char first = text.charAt(i);
+		if ((first == '-') || (first == '+')) {
+			negative = (first == '-');
+			if (++i == end) {
+				throw error(text, start, end);
+			}
+		}
+		
+		// accumulate negatively, the negative range is larger
+		long limit = negative ? min : -max;
+		long multiplyLimit = limit / 10;
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = Character.digit(text.charAt(i), 10);
+			if ((digit < 0) || (value < multiplyLimit)) {
+				throw error(text, start, end);
+			}
+			value *= 10;
+			if (value < limit + digit) {
+				throw error(text, start, end);
+			}
+			value -= digit;
+		}
+		
+		return negative ? value : -value;
+	}
+	
+	private static ConversionException error(CharSequence text, int start, int end) {
+		return new ConversionException(new NumberFormatException("For input string: \"" + text.subSequence(start, end) + "\""));
+	}
+	
+}
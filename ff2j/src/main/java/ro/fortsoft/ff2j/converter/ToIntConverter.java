@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.converter;
+
+/**
+ * A converter that decodes a int directly from a range of the matched line, without 
+ * creating a substring and without boxing. FF2J uses it for the fields of type int or Integer.
+ * 
+ * @author Decebal Suiu
+ */
+public interface ToIntConverter {
+
+	/**
+	 * Transform the characters between start (inclusive) and end (exclusive) into a int.
+	 * 
+	 * @param text the matched line
+	 * @param start the start of the value
+	 * @param end the end of the value
+	 * @return the int value 
+	 * @throws ConversionException if conversion cannot be performed successfully
+	 */
+	public int decodeInt(CharSequence text, int start, int end);
+	
+}
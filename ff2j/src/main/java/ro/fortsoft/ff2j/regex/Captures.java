@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.regex;
+
+import java.util.regex.MatchResult;
+
+/**
+ * A reusable {@link MatchResult} over the capture slots of a match (start and end of each group).
+ * 
+ * @author Decebal Suiu
+ */
+class Captures implements MatchResult {
+
+	private CharSequence text;
+	private int[] slots;
+	private int groupCount;
+	
+	void reset(CharSequence text, int[] slots, int groupCount) {
+		this.text = text;
+		this.slots = slots;
+		this.groupCount = groupCount;
+	}
+	
+	@Override
+	public int start() {
+		return start(0);
+	}
+
+	@Override
+	public int start(int group) {
+		checkGroup(group);
+		
+		return slots[2 * group];
+	}
+
+	@Override
+	public int end() {
+		return end(0);
+	}
+
+	@Override
+	public int end(int group) {
+		checkGroup(group);
+		
+		return slots[2 * group + 1];
+	}
+
+	@Override
+	public String group() {
+		return group(0);
+	}
+
+	@Override
+	public String group(int group) {
+		int start = start(group);
+		if (start < 0) {
+			return null;
+		}
+		
+		return text.subSequence(start, end(group)).toString();
+	}
+
+	@Override
+	public int groupCount() {
+		return groupCount;
+	}
+	
+	private void checkGroup(int group) {
+		if ((group < 0) || (group > groupCount)) {
+			throw new IndexOutOfBoundsException("No group " + group);
+		}
+	}
+
+}
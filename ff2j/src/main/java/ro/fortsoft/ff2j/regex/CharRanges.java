@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.regex;
+
+import java.util.Arrays;
+
+/**
+ * Operations on sets of code points represented as sorted, disjoint, inclusive ranges 
+ * (low, high, low, high, ...).
+ * 
+ * @author Decebal Suiu
+ */
+class CharRanges {
+
+	static final int[] EMPTY = new int[0];
+	static final int[] DIGIT = { '0', '9' };
+	static final int[] SPACE = { '\t', '\r', ' ', ' ' }; // \t \n \u000B \f \r and space
+	static final int[] WORD = { '0', '9', 'A', 'Z', '_', '_', 'a', 'z' };
+	static final int[] LINE_TERMINATOR = { '\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029 };
+	static final int[] DOT = complement(LINE_TERMINATOR);
+	
+	private CharRanges() {
+	}
+	
+	public static int[] of(int codePoint) {
+		return new int[] { codePoint, codePoint };
+	}
+	
+	public static boolean contains(int[] ranges, int codePoint) {
+		// binary search over the pairs
+		int low = 0;
+		int high = (ranges.length >> 1) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (codePoint < ranges[2 * middle]) {
+				high = middle - 1;
+			} else if (codePoint > ranges[2 * middle + 1]) {
+				low = middle + 1;
+			} else {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	public static int[] union(int[] a, int[] b) {
+		int[] all = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, all, a.length, b.length);
+		
+		// sort the pairs by low
+		int pairCount = all.length >> 1;
+		long[] pairs = new long[pairCount];
+		for (int i = 0; i < pairCount; i++) {
+			pairs[i] = ((long) all[2 * i] << 32) | (all[2 * i + 1] & 0xFFFFFFFFL);
+		}
+		Arrays.sort(pairs);
+		
+		// merge the overlapping or adjacent pairs
+		int[] result = new int[all.length];
+		int size = 0;
+		for (long pair : pairs) {
+			int low = (int) (pair >> 32);
+			int high = (int) pair;
+			if ((size > 0) && (low <= result[size - 1] + 1)) {
+				result[size - 1] = Math.max(result[size - 1], high);
+			} else {
+				result[size++] = low;
+				result[size++] = high;
+			}
+		}
+		
+		return Arrays.copyOf(result, size);
+	}
+	
+	public static int[] complement(int[] ranges) {
+		int[] result = new int[ranges.length + 2];
+		int size = 0;
+		int next = 0;
+		for (int i = 0; i < ranges.length; i += 2) {
+			if (ranges[i] > next) {
+				result[size++] = next;
+				result[size++] = ranges[i] - 1;
+			}
+			next = ranges[i + 1] + 1;
+		}
+		if (next <= Character.MAX_CODE_POINT) {
+			result[size++] = next;
+			result[size++] = Character.MAX_CODE_POINT;
+		}
+		
+		return Arrays.copyOf(result, size);
+	}
+	
+}
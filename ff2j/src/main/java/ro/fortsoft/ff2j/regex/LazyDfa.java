@@ -0,0 +1,275 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.regex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A deterministic automaton built on demand (subset construction) from the automaton of all 
+ * expressions. Each state is a set of instructions; it knows the first expression that matches 
+ * when the text ends in that state. A text is scanned only once, whatever the number of expressions.
+ * The states are cached per thread; when the cache is full it's cleared and rebuilt.
+ * 
+ * @author Decebal Suiu
+ */
+class LazyDfa {
+
+	private static final int ASCII = 128;
+	private static final int MAX_STATES = 4096;
+	
+	private Program program;
+	
+	public LazyDfa(Program program) {
+		this.program = program;
+	}
+	
+	public Cache createCache() {
+		return new Cache(this);
+	}
+	
+	/**
+	 * Returns the index of the first expression that matches the entire text or -1.
+	 */
+	public int match(CharSequence text, Cache cache) {
+		int length = text.length();
+		if (length == 0) {
+			return cache.emptyMatch;
+		}
+		
+		DfaState state = cache.start;
+		int position = 0;
+		while (position < length) {
+			int codePoint = Character.codePointAt(text, position);
+			position += Character.charCount(codePoint);
+			
+			DfaState next;
+			if (codePoint < ASCII) {
+				next = state.ascii[codePoint];
+			} else {
+				next = (state.others != null) ? state.others.get(codePoint) : null;
+			}
+			if (next == null) {
+				next = computeNext(state, codePoint, cache);
+			}
+			if (next.pcs.length == 0) {
+				// dead state
+				return -1;
+			}
+			state = next;
+		}
+		
+		return state.match;
+	}
+
+	private DfaState computeNext(DfaState state, int codePoint, Cache cache) {
+		if (cache.states.size() >= MAX_STATES) {
+			cache.reset();
+		}
+		
+		cache.beginClosure();
+		for (int pc : state.pcs) {
+			if ((program.ops[pc] == Program.CHAR_CLASS) && CharRanges.contains(program.classes[pc], codePoint)) {
+				closure(pc + 1, false, false, cache);
+			}
+		}
+		DfaState next = cache.intern();
+		if (codePoint < ASCII) {
+			state.ascii[codePoint] = next;
+		} else {
+			if (state.others == null) {
+				state.others = new HashMap<Integer, DfaState>();
+			}
+			state.others.put(codePoint, next);
+		}
+		
+		return next;
+	}
+	
+	/**
+	 * Adds to the closure of the cache the instructions reached with empty transitions from pc.
+	 * Without the end of the text, an END instruction is kept in the set (it's resolved at the end).
+	 */
+	private void closure(int pc, boolean atStart, boolean atEnd, Cache cache) {
+		int[] stack = cache.stack;
+		int top = 0;
+		stack[top++] = pc;
+		while (top > 0) {
+			pc = stack[--top];
+			if (!cache.mark(pc)) {
+				continue;
+			}
+			
+			switch (program.ops[pc]) {
+				case Program.JUMP:
+					stack[top++] = program.xs[pc];
+					break;
+				case Program.SPLIT:
+					stack[top++] = program.ys[pc];
+					stack[top++] = program.xs[pc];
+					break;
+				case Program.SAVE:
+					stack[top++] = pc + 1;
+					break;
+				case Program.BEGIN:
+					if (atStart) {
+						stack[top++] = pc + 1;
+					}
+					break;
+				case Program.END:
+					if (atEnd) {
+						stack[top++] = pc + 1;
+					} else {
+						cache.addToClosure(pc);
+					}
+					break;
+				default:
+					cache.addToClosure(pc);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the first expression that matches when the text ends with one of these instructions.
+	 */
+	private int computeMatch(int[] pcs, boolean atStart, Cache cache) {
+		cache.beginClosure();
+		for (int pc : pcs) {
+			if (program.ops[pc] == Program.END) {
+				closure(pc, atStart, true, cache);
+			} else if (program.ops[pc] == Program.MATCH) {
+				cache.addToClosure(pc);
+			}
+		}
+		
+		int match = -1;
+		for (int i = 0; i < cache.closureSize; i++) {
+			int pc = cache.closure[i];
+			if ((program.ops[pc] == Program.MATCH) && ((match < 0) || (program.xs[pc] < match))) {
+				match = program.xs[pc];
+			}
+		}
+		
+		return match;
+	}
+	
+	static class DfaState {
+		
+		/** The sorted instructions (CHAR_CLASS, END and MATCH) of this state */
+		final int[] pcs;
+		final DfaState[] ascii;
+		Map<Integer, DfaState> others;
+		/** The first expression that matches if the text ends in this state, or -1 */
+		int match;
+		
+		DfaState(int[] pcs) {
+			this.pcs = pcs;
+			ascii = new DfaState[ASCII];
+		}
+		
+	}
+	
+	/**
+	 * The per thread states and the scratch used to build them.
+	 */
+	static class Cache {
+		
+		private LazyDfa dfa;
+		private Map<StateKey, DfaState> states;
+		private DfaState start;
+		private int emptyMatch;
+		
+		private int[] marks;
+		private int generation;
+		private int[] closure;
+		private int closureSize;
+		private int[] stack;
+		
+		private Cache(LazyDfa dfa) {
+			this.dfa = dfa;
+			Program program = dfa.program;
+			marks = new int[program.size];
+			closure = new int[program.size];
+			stack = new int[2 * program.size + 2];
+			reset();
+		}
+		
+		private void reset() {
+			states = new HashMap<StateKey, DfaState>();
+			
+			beginClosure();
+			for (int pc : dfa.program.starts) {
+				dfa.closure(pc, true, false, this);
+			}
+			start = intern();
+			emptyMatch = dfa.computeMatch(start.pcs, true, this);
+		}
+		
+		private void beginClosure() {
+			generation++;
+			closureSize = 0;
+		}
+		
+		private boolean mark(int pc) {
+			if (marks[pc] == generation) {
+				return false;
+			}
+			marks[pc] = generation;
+			
+			return true;
+		}
+		
+		private void addToClosure(int pc) {
+			closure[closureSize++] = pc;
+		}
+		
+		private DfaState intern() {
+			int[] pcs = Arrays.copyOf(closure, closureSize);
+			Arrays.sort(pcs);
+			StateKey key = new StateKey(pcs);
+			DfaState state = states.get(key);
+			if (state == null) {
+				state = new DfaState(pcs);
+				state.match = dfa.computeMatch(pcs, false, this);
+				states.put(key, state);
+			}
+			
+			return state;
+		}
+		
+	}
+	
+	private static class StateKey {
+		
+		private final int[] pcs;
+		private final int hashCode;
+		
+		StateKey(int[] pcs) {
+			this.pcs = pcs;
+			hashCode = Arrays.hashCode(pcs);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object object) {
+			return (object instanceof StateKey) && Arrays.equals(pcs, ((StateKey) object).pcs);
+		}
+		
+	}
+	
+}
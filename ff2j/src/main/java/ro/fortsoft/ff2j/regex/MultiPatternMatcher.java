@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.regex;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.MatchResult;
+
+/**
+ * Matches a line against many regular expressions at once. All expressions are compiled into one 
+ * automaton: a single scan of the line finds the first expression (in list order) that matches 
+ * the entire line, so the cost per line doesn't grow with the number of expressions. Only for 
+ * that expression the capture groups are computed, with a second linear scan.
+ * <p>
+ * Only the regular subset of the java.util.regex syntax is supported, see {@link #isSupported(String)}.
+ * A matcher is thread safe, the per thread state is created with {@link #createState()}.
+ * 
+ * @author Decebal Suiu
+ */
+public class MultiPatternMatcher {
+
+	private Program program;
+	private LazyDfa dfa;
+	private PikeVM pikeVM;
+	
+	/**
+	 * @throws UnsupportedRegexException if an expression uses an unsupported construct
+	 */
+	public MultiPatternMatcher(List<String> regexes) {
+		program = Program.compile(regexes);
+		dfa = new LazyDfa(program);
+		pikeVM = new PikeVM(program);
+	}
+	
+	/**
+	 * Returns true if the expression (compiled without flags) uses only literals, character classes, 
+	 * groups, alternations, greedy or lazy quantifiers, ^ and $.
+	 */
+	public static boolean isSupported(String regex) {
+		try {
+			Program.compile(Collections.singletonList(regex));
+			return true;
+		} catch (UnsupportedRegexException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns the number of capturing groups of an expression.
+	 */
+	public int getGroupCount(int expression) {
+		return program.groupCounts[expression];
+	}
+	
+	public State createState() {
+		return new State(this);
+	}
+	
+	/**
+	 * Returns the index of the first expression that matches the entire line, or -1 if there is none.
+	 * After a match, {@link State#getMatchResult()} returns the captures of the match.
+	 */
+	public int match(CharSequence lineText, State state) {
+		int expression = dfa.match(lineText, state.dfaCache);
+		if (expression >= 0) {
+			pikeVM.matches(lineText, expression, state.pikeState);
+			state.matchResult.reset(lineText, state.pikeState.captures, program.groupCounts[expression]);
+		}
+		
+		return expression;
+	}
+	
+	/**
+	 * The state used by a single thread.
+	 */
+	public static class State {
+		
+		private LazyDfa.Cache dfaCache;
+		private PikeVM.State pikeState;
+		private Captures matchResult;
+		
+		private State(MultiPatternMatcher matcher) {
+			dfaCache = matcher.dfa.createCache();
+			pikeState = matcher.pikeVM.createState();
+			matchResult = new Captures();
+		}
+
+		/**
+		 * Returns the result of the last match. The result is reused by the next match.
+		 */
+		public MatchResult getMatchResult() {
+			return matchResult;
+		}
+		
+	}
+	
+}
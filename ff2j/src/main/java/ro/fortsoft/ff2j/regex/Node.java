@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.regex;
+
+import java.util.List;
+
+/**
+ * The syntax tree of a regular expression.
+ * 
+ * @author Decebal Suiu
+ */
+abstract class Node {
+
+	static class CharClass extends Node {
+		
+		/** Sorted, disjoint, inclusive code point ranges (low, high, low, high, ...) */
+		final int[] ranges;
+		
+		public CharClass(int[] ranges) {
+			this.ranges = ranges;
+		}
+		
+	}
+	
+	static class Concat extends Node {
+		
+		final List<Node> nodes;
+		
+		public Concat(List<Node> nodes) {
+			this.nodes = nodes;
+		}
+		
+	}
+	
+	static class Alternate extends Node {
+		
+		final List<Node> nodes;
+		
+		public Alternate(List<Node> nodes) {
+			this.nodes = nodes;
+		}
+		
+	}
+	
+	static class Group extends Node {
+		
+		final Node node;
+		/** The capturing group index or -1 for a non capturing group */
+		final int index;
+		
+		public Group(Node node, int index) {
+			this.node = node;
+			this.index = index;
+		}
+		
+	}
+	
+	static class Repeat extends Node {
+		
+		final Node node;
+		final int min;
+		/** The maximum number of repetitions or -1 if there is no limit */
+		final int max;
+		final boolean greedy;
+		
+		public Repeat(Node node, int min, int max, boolean greedy) {
+			this.node = node;
+			this.min = min;
+			this.max = max;
+			this.greedy = greedy;
+		}
+		
+	}
+	
+	static class Assertion extends Node {
+		
+		static final int BEGIN = 0;
+		static final int END = 1;
+		
+		final int kind;
+		
+		public Assertion(int kind) {
+			this.kind = kind;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.regex;
+
+import java.util.Arrays;
+
+/**
+ * Simulates the automaton of one expression with all threads in lock step (Pike's VM), so a text is 
+ * scanned only once. The threads are kept in priority order, which gives the same captures as a 
+ * backtracking matcher. A text matches only if a thread reaches MATCH at the end of the text.
+ * 
+ * @author Decebal Suiu
+ */
+class PikeVM {
+
+	private Program program;
+	
+	public PikeVM(Program program) {
+		this.program = program;
+	}
+	
+	public State createState() {
+		return new State(program);
+	}
+	
+	/**
+	 * Returns true if the expression matches the entire text. The captures of the match are 
+	 * available in {@link State#captures}.
+	 */
+	public boolean matches(CharSequence text, int expression, State state) {
+		int length = text.length();
+		ThreadList current = state.current;
+		ThreadList next = state.next;
+		current.clear();
+		Arrays.fill(state.captures, -1);
+		addThread(current, program.starts[expression], 0, length, state);
+		
+		int position = 0;
+		while (current.size > 0) {
+			if (position == length) {
+				for (int i = 0; i < current.size; i++) {
+					if (program.ops[current.pcs[i]] == Program.MATCH) {
+						System.arraycopy(current.captures, i * state.slotCount, state.captures, 0, state.slotCount);
+						return true;
+					}
+				}
+				return false;
+			}
+			
+			int codePoint = Character.codePointAt(text, position);
+			int nextPosition = position + Character.charCount(codePoint);
+			next.clear();
+			for (int i = 0; i < current.size; i++) {
+				int pc = current.pcs[i];
+				if ((program.ops[pc] == Program.CHAR_CLASS) && CharRanges.contains(program.classes[pc], codePoint)) {
+					System.arraycopy(current.captures, i * state.slotCount, state.captures, 0, state.slotCount);
+					addThread(next, pc + 1, nextPosition, length, state);
+				}
+			}
+			
+			state.current = next;
+			state.next = current;
+			current = next;
+			next = state.next;
+			position = nextPosition;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Follows the empty transitions from pc (in priority order) with the captures from 
+	 * {@link State#captures} and adds the reached threads to the list.
+	 */
+	private void addThread(ThreadList list, int pc, int position, int length, State state) {
+		int[] captures = state.captures;
+		int[] stackPcs = state.stackPcs;
+		int[] stackValues = state.stackValues;
+		int top = 0;
+		stackPcs[top++] = pc;
+		while (top > 0) {
+			pc = stackPcs[--top];
+			if (pc < 0) {
+				// restore a capture slot
+				captures[-pc - 1] = stackValues[top];
+				continue;
+			}
+			if (list.contains(pc)) {
+				continue;
+			}
+			int index = list.add(pc);
+			
+			switch (program.ops[pc]) {
+				case Program.JUMP:
+					stackPcs[top++] = program.xs[pc];
+					break;
+				case Program.SPLIT:
+					stackPcs[top++] = program.ys[pc];
+					stackPcs[top++] = program.xs[pc];
+					break;
+				case Program.SAVE:
+					int slot = program.xs[pc];
+					stackValues[top] = captures[slot];
+					stackPcs[top++] = -slot - 1;
+					captures[slot] = position;
+					stackPcs[top++] = pc + 1;
+					break;
+				case Program.BEGIN:
+					if (position == 0) {
+						stackPcs[top++] = pc + 1;
+					}
+					break;
+				case Program.END:
+					if (position == length) {
+						stackPcs[top++] = pc + 1;
+					}
+					break;
+				default:
+					System.arraycopy(captures, 0, list.captures, index * state.slotCount, state.slotCount);
+			}
+		}
+	}
+	
+	/**
+	 * The per thread state of the simulation.
+	 */
+	static class State {
+		
+		private ThreadList current;
+		private ThreadList next;
+		private int slotCount;
+		/** The working captures and, after a match, the captures of that match */
+		int[] captures;
+		private int[] stackPcs;
+		private int[] stackValues;
+		
+		private State(Program program) {
+			slotCount = program.slotCount;
+			current = new ThreadList(program.size, slotCount);
+			next = new ThreadList(program.size, slotCount);
+			captures = new int[slotCount];
+			stackPcs = new int[2 * program.size + 2];
+			stackValues = new int[2 * program.size + 2];
+		}
+		
+	}
+	
+	/**
+	 * A sparse set of program counters, in insertion (priority) order, with the captures of each thread.
+	 */
+	static class ThreadList {
+		
+		private int[] sparse;
+		private int[] pcs;
+		private int size;
+		private int[] captures;
+		
+		ThreadList(int programSize, int slotCount) {
+			sparse = new int[programSize];
+			pcs = new int[programSize];
+			captures = new int[programSize * slotCount];
+		}
+		
+		boolean contains(int pc) {
+			int index = sparse[pc];
+			
+			return (index < size) && (pcs[index] == pc);
+		}
+		
+		int add(int pc) {
+			sparse[pc] = size;
+			pcs[size] = pc;
+			
+			return size++;
+		}
+		
+		void clear() {
+			size = 0;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The instructions of a Thompson automaton for one or more regular expressions. Each expression has
+ * its own start instruction and ends with a MATCH instruction that holds the index of the expression.
+ * 
+ * @author Decebal Suiu
+ */
+class Program {
+
+	/** Consumes a code point from a character class (x is unused) */
+	static final int CHAR_CLASS = 0;
+	/** Continues with x (preferred) and with y */
+	static final int SPLIT = 1;
+	/** Continues with x */
+	static final int JUMP = 2;
+	/** Saves the current position in the capture slot x */
+	static final int SAVE = 3;
+	/** Matches at the start of the text */
+	static final int BEGIN = 4;
+	/** Matches at the end of the text */
+	static final int END = 5;
+	/** The expression x matched */
+	static final int MATCH = 6;
+
+	/** The maximum number of instructions (the counted repetitions are expanded) */
+	static final int MAX_SIZE = 20000;
+	
+	int[] ops;
+	int[] xs;
+	int[] ys;
+	int[][] classes;
+	int size;
+	
+	/** The start instruction of each expression */
+	int[] starts;
+	/** The number of capturing groups of each expression */
+	int[] groupCounts;
+	/** The number of capture slots of a thread (for the expression with most groups) */
+	int slotCount;
+	
+	private String regex;
+	
+	private Program() {
+		ops = new int[64];
+		xs = new int[64];
+		ys = new int[64];
+		classes = new int[64][];
+	}
+	
+	public static Program compile(List<String> regexes) {
+		Program program = new Program();
+		program.starts = new int[regexes.size()];
+		program.groupCounts = new int[regexes.size()];
+		for (int i = 0; i < regexes.size(); i++) {
+			program.regex = regexes.get(i);
+			Node node;
+			try {
+				node = RegexParser.parse(program.regex);
+			} catch (UnsupportedRegexException e) {
+				throw e;
+			} catch (RuntimeException e) {
+				throw new UnsupportedRegexException("Cannot parse " + program.regex + ": " + e);
+			}
+			
+			program.starts[i] = program.size;
+			program.emit(SAVE, 0, 0, null);
+			program.compile(node);
+			program.emit(SAVE, 1, 0, null);
+			program.emit(MATCH, i, 0, null);
+			
+			program.groupCounts[i] = maxGroupIndex(node);
+			program.slotCount = Math.max(program.slotCount, 2 * (program.groupCounts[i] + 1));
+		}
+		program.regex = null;
+		
+		return program;
+	}
+	
+	private void compile(Node node) {
+		if (node instanceof Node.CharClass) {
+			emit(CHAR_CLASS, 0, 0, ((Node.CharClass) node).ranges);
+		} else if (node instanceof Node.Concat) {
+			for (Node child : ((Node.Concat) node).nodes) {
+				compile(child);
+			}
+		} else if (node instanceof Node.Alternate) {
+			List<Node> nodes = ((Node.Alternate) node).nodes;
+			List<Integer> jumps = new ArrayList<Integer>();
+			for (int i = 0; i < nodes.size() - 1; i++) {
+				int split = emit(SPLIT, 0, 0, null);
+				xs[split] = size;
+				compile(nodes.get(i));
+				jumps.add(emit(JUMP, 0, 0, null));
+				ys[split] = size;
+			}
+			compile(nodes.get(nodes.size() - 1));
+			for (int jump : jumps) {
+				xs[jump] = size;
+			}
+		} else if (node instanceof Node.Group) {
+			Node.Group group = (Node.Group) node;
+			if (group.index >= 0) {
+				emit(SAVE, 2 * group.index, 0, null);
+			}
+			compile(group.node);
+			if (group.index >= 0) {
+				emit(SAVE, 2 * group.index + 1, 0, null);
+			}
+		} else if (node instanceof Node.Repeat) {
+			compileRepeat((Node.Repeat) node);
+		} else if (node instanceof Node.Assertion) {
+			emit((((Node.Assertion) node).kind == Node.Assertion.BEGIN) ? BEGIN : END, 0, 0, null);
+		}
+	}
+	
+	private void compileRepeat(Node.Repeat repeat) {
+		for (int i = 0; i < repeat.min; i++) {
+			compile(repeat.node);
+		}
+		
+		if (repeat.max < 0) {
+			int split = emit(SPLIT, 0, 0, null);
+			int body = size;
+			compile(repeat.node);
+			emit(JUMP, split, 0, null);
+			setBranches(split, body, size, repeat.greedy);
+		} else {
+			List<Integer> splits = new ArrayList<Integer>();
+			for (int i = repeat.min; i < repeat.max; i++) {
+				int split = emit(SPLIT, 0, 0, null);
+				splits.add(split);
+				compile(repeat.node);
+			}
+			for (int split : splits) {
+				setBranches(split, split + 1, size, repeat.greedy);
+			}
+		}
+	}
+	
+	private void setBranches(int split, int body, int exit, boolean greedy) {
+		xs[split] = greedy ? body : exit;
+		ys[split] = greedy ? exit : body;
+	}
+	
+	private int emit(int op, int x, int y, int[] ranges) {
+		if (size == MAX_SIZE) {
+			throw new UnsupportedRegexException("Too many instructions for " + regex);
+		}
+		if (size == ops.length) {
+			int capacity = 2 * size;
+			ops = Arrays.copyOf(ops, capacity);
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			classes = Arrays.copyOf(classes, capacity);
+		}
+		ops[size] = op;
+		xs[size] = x;
+		ys[size] = y;
+		classes[size] = ranges;
+		
+		return size++;
+	}
+	
+	private static int maxGroupIndex(Node node) {
+		int max = 0;
+		if (node instanceof Node.Concat) {
+			for (Node child : ((Node.Concat) node).nodes) {
+				max = Math.max(max, maxGroupIndex(child));
+			}
+		} else if (node instanceof Node.Alternate) {
+			for (Node child : ((Node.Alternate) node).nodes) {
+				max = Math.max(max, maxGroupIndex(child));
+			}
+		} else if (node instanceof Node.Group) {
+			Node.Group group = (Node.Group) node;
+			max = Math.max(group.index, maxGroupIndex(group.node));
+		} else if (node instanceof Node.Repeat) {
+			max = maxGroupIndex(((Node.Repeat) node).node);
+		}
+		
+		return max;
+	}
+	
+}
@@ -0,0 +1,453 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the regular subset of the java.util.regex syntax (compiled without flags): literals, 
+ * character classes, groups, alternations, greedy and lazy quantifiers, ^ and $ (at the start and at 
+ * the end of the line). Any other construct throws an {@link UnsupportedRegexException}.
+ * 
+ * @author Decebal Suiu
+ */
+class RegexParser {
+
+	private String regex;
+	private int index;
+	private int groupCount;
+	
+	private RegexParser(String regex) {
+		this.regex = regex;
+	}
+	
+	public static Node parse(String regex) {
+		RegexParser parser = new RegexParser(regex);
+		Node node = parser.parseAlternation();
+		if (parser.index < regex.length()) {
+			throw parser.unsupported(String.valueOf(regex.charAt(parser.index)));
+		}
+		parser.checkNestedGroups(node, false);
+		
+		return node;
+	}
+
+	private Node parseAlternation() {
+		List<Node> nodes = new ArrayList<Node>();
+		nodes.add(parseSequence());
+		while (peek('|')) {
+			index++;
+			nodes.add(parseSequence());
+		}
+		
+		return (nodes.size() == 1) ? nodes.get(0) : new Node.Alternate(nodes);
+	}
+	
+	private Node parseSequence() {
+		List<Node> nodes = new ArrayList<Node>();
+		while ((index < regex.length()) && !peek('|') && !peek(')')) {
+			int c = regex.codePointAt(index);
+			if (c == '\\' && startsWith("\\Q")) {
+				index += 2;
+				int end = regex.indexOf("\\E", index);
+				if (end < 0) {
+					end = regex.length();
+				}
+				String quoted = regex.substring(index, end);
+				index = Math.min(end + 2, regex.length());
+				for (int i = 0; i < quoted.length(); ) {
+					int codePoint = quoted.codePointAt(i);
+					i += Character.charCount(codePoint);
+					Node literal = new Node.CharClass(CharRanges.of(codePoint));
+					if (i == quoted.length()) {
+						// the quantifier applies to the last quoted character
+						literal = parseQuantifier(literal);
+					}
+					nodes.add(literal);
+				}
+				continue;
+			}
+			
+			nodes.add(parseQuantifier(parseAtom()));
+		}
+		
+		return new Node.Concat(nodes);
+	}
+	
+	private Node parseAtom() {
+		int c = regex.codePointAt(index);
+		switch (c) {
+			case '(':
+				return parseGroup();
+			case '[':
+				return new Node.CharClass(parseCharClass());
+			case '.':
+				index++;
+				return new Node.CharClass(CharRanges.DOT);
+			case '^':
+				index++;
+				return new Node.Assertion(Node.Assertion.BEGIN);
+			case '$':
+				index++;
+				return new Node.Assertion(Node.Assertion.END);
+			case '\\':
+				index++;
+				return parseEscape();
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+				throw unsupported(String.valueOf((char) c));
+			default:
+				index += Character.charCount(c);
+				return new Node.CharClass(CharRanges.of(c));
+		}
+	}
+	
+	private Node parseGroup() {
+		index++;
+		int groupIndex;
+		if (peek('?')) {
+			if (startsWith("?:")) {
+				index += 2;
+				groupIndex = -1;
+			} else if (startsWith("?<") && !startsWith("?<=") && !startsWith("?<!")) {
+				// named capturing group
+				int end = regex.indexOf('>', index);
+				if (end < 0) {
+					throw unsupported("(?<");
+				}
+				index = end + 1;
+				groupIndex = ++groupCount;
+			} else {
+				throw unsupported("(?");
+			}
+		} else {
+			groupIndex = ++groupCount;
+		}
+		
+		Node node = parseAlternation();
+		expect(')');
+		
+		return new Node.Group(node, groupIndex);
+	}
+	
+	private Node parseEscape() {
+		int c = regex.codePointAt(index);
+		switch (c) {
+			case 'd': index++; return new Node.CharClass(CharRanges.DIGIT);
+			case 'D': index++; return new Node.CharClass(CharRanges.complement(CharRanges.DIGIT));
+			case 's': index++; return new Node.CharClass(CharRanges.SPACE);
+			case 'S': index++; return new Node.CharClass(CharRanges.complement(CharRanges.SPACE));
+			case 'w': index++; return new Node.CharClass(CharRanges.WORD);
+			case 'W': index++; return new Node.CharClass(CharRanges.complement(CharRanges.WORD));
+			case 'A': index++; return new Node.Assertion(Node.Assertion.BEGIN);
+			case 'z': index++; return new Node.Assertion(Node.Assertion.END);
+		}
+		
+		return new Node.CharClass(CharRanges.of(parseEscapedChar()));
+	}
+	
+	/**
+	 * Parses an escape sequence (after the backslash) that represents a single character.
+	 */
+	private int parseEscapedChar() {
+		int c = regex.codePointAt(index);
+		index += Character.charCount(c);
+		switch (c) {
+			case 't': return '\t';
+			case 'n': return '\n';
+			case 'r': return '\r';
+			case 'f': return '\f';
+			case 'a': return '\u0007';
+			case 'e': return '\u001B';
+			case 'c': return regex.charAt(index++) ^ 64;
+			case '0': {
+				// octal: \0n, \0nn, \0mnn (m <= 3)
+				int value = 0;
+				int digits = 0;
+				while ((digits < 3) && (index < regex.length()) && (regex.charAt(index) >= '0') && (regex.charAt(index) <= '7')) {
+					int next = value * 8 + (regex.charAt(index) - '0');
+					if (next > 0377) {
+						break;
+					}
+					value = next;
+					index++;
+					digits++;
+				}
+				if (digits == 0) {
+					throw unsupported("\\0");
+				}
+				return value;
+			}
+			case 'x': {
+				if (peek('{')) {
+					int end = regex.indexOf('}', index);
+					if (end < 0) {
+						throw unsupported("\\x{");
+					}
+					int value = Integer.parseInt(regex.substring(index + 1, end), 16);
+					index = end + 1;
+					return value;
+				}
+				int value = Integer.parseInt(regex.substring(index, index + 2), 16);
+				index += 2;
+				return value;
+			}
+			case 'u': {
+				int value = Integer.parseInt(regex.substring(index, index + 4), 16);
+				index += 4;
+				if (Character.isHighSurrogate((char) value)) {
+					throw unsupported("\\u" + Integer.toHexString(value));
+				}
+				return value;
+			}
+		}
+		
+		if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9'))) {
+			// back references, boundaries, unicode classes, ...
+			throw unsupported("\\" + (char) c);
+		}
+		
+		return c;
+	}
+	
+	private int[] parseCharClass() {
+		expect('[');
+		boolean negated = false;
+		if (peek('^')) {
+			index++;
+			negated = true;
+		}
+		
+		int[] ranges = CharRanges.EMPTY;
+		boolean first = true;
+		while (first || !peek(']')) {
+			if (index >= regex.length()) {
+				throw unsupported("[");
+			}
+			first = false;
+			if (peek('[')) {
+				ranges = CharRanges.union(ranges, parseCharClass());
+				continue;
+			}
+			if (startsWith("&&")) {
+				throw unsupported("&&");
+			}
+			
+			int low;
+			if (peek('\\')) {
+				index++;
+				int[] predefined = parsePredefinedClass();
+				if (predefined != null) {
+					ranges = CharRanges.union(ranges, predefined);
+					continue;
+				}
+				if (startsWith("Q")) {
+					throw unsupported("\\Q");
+				}
+				low = parseEscapedChar();
+			} else {
+				low = regex.codePointAt(index);
+				index += Character.charCount(low);
+			}
+			
+			int high = low;
+			if (peek('-') && (index + 1 < regex.length()) && (regex.charAt(index + 1) != ']') && (regex.charAt(index + 1) != '[')) {
+				index++;
+				if (peek('\\')) {
+					index++;
+					if (parsePredefinedClass() != null) {
+						throw unsupported("-\\");
+					}
+					high = parseEscapedChar();
+				} else {
+					high = regex.codePointAt(index);
+					index += Character.charCount(high);
+				}
+				if (high < low) {
+					throw unsupported("-");
+				}
+			}
+			ranges = CharRanges.union(ranges, new int[] { low, high });
+		}
+		expect(']');
+		
+		return negated ? CharRanges.complement(ranges) : ranges;
+	}
+	
+	/**
+	 * Returns the ranges of a predefined character class (\d, \s, \w, ...) or null.
+	 */
+	private int[] parsePredefinedClass() {
+		if (index >= regex.length()) {
+			return null;
+		}
+		
+		int[] ranges;
+		switch (regex.charAt(index)) {
+			case 'd': ranges = CharRanges.DIGIT; break;
+			case 'D': ranges = CharRanges.complement(CharRanges.DIGIT); break;
+			case 's': ranges = CharRanges.SPACE; break;
+			case 'S': ranges = CharRanges.complement(CharRanges.SPACE); break;
+			case 'w': ranges = CharRanges.WORD; break;
+			case 'W': ranges = CharRanges.complement(CharRanges.WORD); break;
+			default: return null;
+		}
+		index++;
+		
+		return ranges;
+	}
+	
+	private Node parseQuantifier(Node node) {
+		if (index >= regex.length()) {
+			return node;
+		}
+		
+		int min;
+		int max;
+		char c = regex.charAt(index);
+		if (c == '?') {
+			min = 0;
+			max = 1;
+			index++;
+		} else if (c == '*') {
+			min = 0;
+			max = -1;
+			index++;
+		} else if (c == '+') {
+			min = 1;
+			max = -1;
+			index++;
+		} else if (c == '{') {
+			int end = regex.indexOf('}', index);
+			if (end < 0) {
+				throw unsupported("{");
+			}
+			String bounds = regex.substring(index + 1, end);
+			int comma = bounds.indexOf(',');
+			try {
+				if (comma < 0) {
+					min = max = Integer.parseInt(bounds.trim());
+				} else {
+					min = Integer.parseInt(bounds.substring(0, comma).trim());
+					String maxText = bounds.substring(comma + 1).trim();
+					max = maxText.isEmpty() ? -1 : Integer.parseInt(maxText);
+				}
+			} catch (NumberFormatException e) {
+				throw unsupported("{" + bounds + "}");
+			}
+			index = end + 1;
+		} else {
+			return node;
+		}
+		
+		boolean greedy = true;
+		if (peek('?')) {
+			index++;
+			greedy = false;
+		} else if (peek('+')) {
+			throw unsupported("possessive quantifier");
+		}
+		
+		if ((node instanceof Node.Assertion) || (peek('?') || peek('*') || peek('+') || peek('{'))) {
+			throw unsupported("quantifier");
+		}
+		if (isNullable(node)) {
+			// the backtracking matcher stops a loop after an empty iteration, an automaton can't do that
+			throw unsupported("quantifier on an expression that can match the empty string");
+		}
+		
+		return new Node.Repeat(node, min, max, greedy);
+	}
+	
+	/**
+	 * The backtracking matcher keeps stale captures for a group nested in a repeated expression 
+	 * (when a repetition is backtracked), so only a capturing group repeated directly (like (\d+\.){3}) 
+	 * is supported inside a repetition.
+	 */
+	private void checkNestedGroups(Node node, boolean inLoop) {
+		if (node instanceof Node.Concat) {
+			for (Node child : ((Node.Concat) node).nodes) {
+				checkNestedGroups(child, inLoop);
+			}
+		} else if (node instanceof Node.Alternate) {
+			for (Node child : ((Node.Alternate) node).nodes) {
+				checkNestedGroups(child, inLoop);
+			}
+		} else if (node instanceof Node.Group) {
+			Node.Group group = (Node.Group) node;
+			if ((group.index >= 0) && inLoop) {
+				throw new UnsupportedRegexException("Capturing group " + group.index + " is nested in a repetition in " + regex);
+			}
+			checkNestedGroups(group.node, inLoop);
+		} else if (node instanceof Node.Repeat) {
+			Node.Repeat repeat = (Node.Repeat) node;
+			if (repeat.max == 1) {
+				checkNestedGroups(repeat.node, inLoop);
+			} else if ((repeat.node instanceof Node.Group) && (((Node.Group) repeat.node).index >= 0) && !inLoop) {
+				checkNestedGroups(((Node.Group) repeat.node).node, true);
+			} else {
+				checkNestedGroups(repeat.node, true);
+			}
+		}
+	}
+	
+	private static boolean isNullable(Node node) {
+		if (node instanceof Node.CharClass) {
+			return false;
+		} else if (node instanceof Node.Concat) {
+			for (Node child : ((Node.Concat) node).nodes) {
+				if (!isNullable(child)) {
+					return false;
+				}
+			}
+			return true;
+		} else if (node instanceof Node.Alternate) {
+			for (Node child : ((Node.Alternate) node).nodes) {
+				if (isNullable(child)) {
+					return true;
+				}
+			}
+			return false;
+		} else if (node instanceof Node.Group) {
+			return isNullable(((Node.Group) node).node);
+		} else if (node instanceof Node.Repeat) {
+			Node.Repeat repeat = (Node.Repeat) node;
+			return (repeat.min == 0) || isNullable(repeat.node);
+		}
+		
+		return true;
+	}
+	
+	private boolean peek(char c) {
+		return (index < regex.length()) && (regex.charAt(index) == c);
+	}
+	
+	private boolean startsWith(String prefix) {
+		return regex.startsWith(prefix, index);
+	}
+	
+	private void expect(char c) {
+		if (!peek(c)) {
+			throw unsupported(String.valueOf(c));
+		}
+		index++;
+	}
+	
+	private UnsupportedRegexException unsupported(String construct) {
+		return new UnsupportedRegexException(regex, index, construct);
+	}
+	
+}
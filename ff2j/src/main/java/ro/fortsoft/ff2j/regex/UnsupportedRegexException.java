@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j.regex;
+
+/**
+ * Thrown when a regular expression uses a construct that cannot be compiled to an automaton 
+ * (back references, look-arounds, possessive quantifiers, inline flags, ...).
+ *
+ * @author Decebal Suiu
+ */
+public class UnsupportedRegexException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UnsupportedRegexException(String message) {
+		super(message);
+	}
+
+	public UnsupportedRegexException(String regex, int index, String construct) {
+		super("Unsupported construct '" + construct + "' near index " + index + " in " + regex);
+	}
+
+}
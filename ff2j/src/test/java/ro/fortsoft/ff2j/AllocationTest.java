@@ -0,0 +1,230 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the lines that are not mapped to an entity allocate nothing, in the reader loop and in
+ * the file chunk loop. The allocated bytes of the current thread are measured (HotSpot's
+ * com.sun.management.ThreadMXBean) for two warmed up parsings with a different number of lines;
+ * the difference divided by the difference of lines is the allocation per line, which must be zero.
+ * 
+ * @author Decebal Suiu
+ */
+public class AllocationTest {
+
+	private static final String LINE = "[webapp 2013/06/13 21:27:00] - Serving download request for /download/unknown";
+	private static final int LINES = 200000;
+	private static final int WARMUP = 5;
+	
+	private static com.sun.management.ThreadMXBean threadBean;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@BeforeClass
+	public static void setUpClass() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+	}
+	
+	@Test
+	public void testReaderLoop() {
+		testReaderLoop(false);
+	}
+	
+	@Test
+	public void testReaderLoopWithMultiPatternMatching() {
+		testReaderLoop(true);
+	}
+	
+	@Test
+	public void testFileLoop() throws Exception {
+		testFileLoop(false);
+	}
+	
+	@Test
+	public void testFileLoopWithMultiPatternMatching() throws Exception {
+		testFileLoop(true);
+	}
+	
+	private void testReaderLoop(boolean multiPatternMatching) {
+		FF2J ff2j = createFF2J(multiPatternMatching);
+		for (int i = 0; i < WARMUP; i++) {
+			parseReader(ff2j, LINES);
+		}
+		
+		long once = parseReader(ff2j, LINES);
+		long twice = parseReader(ff2j, 2 * LINES);
+		assertNoAllocationPerLine(once, twice);
+	}
+	
+	private void testFileLoop(boolean multiPatternMatching) throws Exception {
+		Path once = createFile(LINES);
+		Path twice = createFile(2 * LINES);
+		FF2J ff2j = createFF2J(multiPatternMatching);
+		// a parsing prepares the handlers and the statistics used by the chunks
+		ff2j.parse(once);
+		ThreadLocal<MappingContext> contexts = ChunkedFileParser.createContexts(ff2j);
+		for (int i = 0; i < WARMUP; i++) {
+			parseFile(ff2j, once, contexts, LINES);
+		}
+		
+		assertNoAllocationPerLine(parseFile(ff2j, once, contexts, LINES), parseFile(ff2j, twice, contexts, 2 * LINES));
+	}
+	
+	private static FF2J createFF2J(boolean multiPatternMatching) {
+		return new FF2J()
+			.map(Download.class)
+			.map(Upload.class)
+			.setMultiPatternMatching(multiPatternMatching);
+	}
+	
+	/**
+	 * Returns the bytes allocated by the current thread to parse the lines.
+	 */
+	private static long parseReader(FF2J ff2j, long lines) {
+		long start = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		FF2J.Statistics statistics = ff2j.parse(new RepeatedLineReader(LINE, lines));
+		long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+		assertEquals(lines, statistics.getEndLineNumber());
+		assertTrue("The line must not be mapped", statistics.getEntitiesCounter().isEmpty());
+		
+		return allocated;
+	}
+	
+	/**
+	 * Returns the bytes allocated by the current thread to map the lines of the file, as one chunk.
+	 */
+	private static long parseFile(FF2J ff2j, Path path, ThreadLocal<MappingContext> contexts, int lines) throws Exception {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ChunkedFileParser parser = new ChunkedFileParser(ff2j, channel, contexts);
+			long start = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			FileChunk chunk = new FileChunk(ff2j, parser, channel, 0, channel.size(), contexts).call();
+			long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+			assertEquals(null, chunk.getError());
+			assertEquals(lines, chunk.getLineCount());
+			assertTrue("The line must not be mapped", chunk.getEvents().isEmpty());
+			
+			return allocated;
+		}
+	}
+	
+	private static void assertNoAllocationPerLine(long once, long twice) {
+		double bytesPerLine = (double) (twice - once) / LINES;
+		assertTrue("Allocated bytes per line = " + bytesPerLine, bytesPerLine < 1);
+	}
+	
+	private Path createFile(int lines) throws IOException {
+		Path path = folder.newFile().toPath();
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+			for (int i = 0; i < lines; i++) {
+				writer.write(LINE);
+				writer.write('\n');
+			}
+		}
+		
+		return path;
+	}
+	
+	@RegexEntity
+	public static class Download {
+
+		public static final String PATTERN = "\\[webapp\\s([^\\]]+)\\]\\s-\\s<\\$>\\s([\\d.]+),\\s/download/([^,]*).*";
+		
+		@RegexField(group = 1)
+		private String date;
+		
+		@RegexField(group = 2)
+		private String ip;
+		
+		@RegexField(group = 3)
+		private String file;
+	
+	}
+	
+	@RegexEntity
+	public static class Upload {
+
+		public static final String PATTERN = "\\[webapp\\s([^\\]]+)\\]\\s-\\sUpload\\s(\\S+)\\s(\\d+)";
+		
+		@RegexField(group = 1)
+		private String date;
+		
+		@RegexField(group = 2)
+		private String file;
+		
+		@RegexField(group = 3)
+		private long size;
+	
+	}
+	
+	/**
+	 * A reader that returns the same line many times, without allocation.
+	 */
+	static class RepeatedLineReader extends Reader {
+
+		private char[] line;
+		private long lines;
+		private int position;
+		
+		public RepeatedLineReader(String line, long lines) {
+			this.line = (line + "\n").toCharArray();
+			this.lines = lines;
+		}
+		
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			if (lines == 0) {
+				return -1;
+			}
+			
+			int count = Math.min(length, line.length - position);
+			System.arraycopy(line, position, buffer, offset, count);
+			position += count;
+			if (position == line.length) {
+				position = 0;
+				lines--;
+			}
+			
+			return count;
+		}
+		
+		@Override
+		public void close() {
+		}
+	
+	}
+
+}
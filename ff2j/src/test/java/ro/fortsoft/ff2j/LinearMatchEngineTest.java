@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import ro.fortsoft.ff2j.regex.MultiPatternMatcher;
+import ro.fortsoft.ff2j.regex.UnsupportedRegexException;
+
+/**
+ * Compares the matches of {@link LinearMatchEngine} (and of the multi pattern automaton) with the matches
+ * of {@link Pattern}: the same lines must match and every group must have the same start and end.
+ * The lines are random mutations of lines that match the patterns, so most of them fail late.
+ * 
+ * @author Decebal Suiu
+ */
+public class LinearMatchEngineTest {
+
+	private static final String DATE = "(20[0-1][0-9]/\\d{2}/\\d{2}\\s\\d{2}:\\d{2}:\\d{2})";
+	private static final String IP = "(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3})";
+	private static final String PREFIX = "[webapp 2013/06/13 21:27:00] - <$> 192.168.1.10, ";
+	
+	/**
+	 * The patterns and a line matched by each pattern. The first patterns are the patterns of the demo
+	 * and benchmark entities, the others use the constructs whose capture semantics are subtle.
+	 */
+	private static final String[][] PATTERNS = {
+		// Download, Upload, Deletion, View
+		{ "\\[webapp\\s" + DATE + "\\]\\s-\\s<\\$>\\s" + IP + ",\\s/download/([^,]*).*",
+			PREFIX + "/download/nextreports-setup-6.1.exe, firefox" },
+		{ "\\[webapp\\s" + DATE + "\\]\\s-\\s<\\$>\\s" + IP + ",\\s/upload/([^,]*),\\s(\\d+).*",
+			PREFIX + "/upload/report.zip, 12345 ok" },
+		{ "\\[webapp\\s" + DATE + "\\]\\s-\\s<\\$>\\s" + IP + ",\\s/delete/([^,]*),\\s(true|false).*",
+			PREFIX + "/delete/report.zip, true" },
+		{ "\\[webapp\\s" + DATE + "\\]\\s-\\s<\\$>\\s" + IP + ",\\s/view/([^,]*),\\s(\\d{3}),\\s(\\d+\\.\\d+).*",
+			PREFIX + "/view/index.html, 200, 0.25" },
+		{ "\\[webapp\\s([^\\]]+)\\]\\s-\\sUpload\\s(\\S+)\\s(\\d+)", "[webapp 2013/06/13] - Upload a.txt 12" },
+		{ "(\\w+)\\s(\\S+)\\s(\\d+)\\s(\\d+)\\s(\\d+)", "GET /index.html 200 512 17" },
+		// alternation order, lazy and greedy quantifiers
+		{ "(a|ab)(c|bcd)(d*)", "abcd" },
+		{ "(\\w+?)(\\d*)x?", "abc123x" },
+		{ "(.*?),(.*),(.*?)", "a,b,c,d" },
+		{ "^(\\S+)\\s+(.*?)\\s*$", "key   some value  " },
+		// optional and repeated groups
+		{ "(?:(\\d+)-)?(\\w+)", "12-ab" },
+		{ "(a|b)+", "abab" },
+		{ "(?:a|(b))c", "bc" },
+		{ "(?<key>\\w+)=(?<value>[^;]*);?", "name=value;" },
+		{ "(|a)(b?)(a*)", "ab" },
+		{ "(x{2,4})(y{0,2})[^x-z]{1,}", "xxxyyab" },
+		{ "([a-c]+|[b-d]+)(.)", "bbdd" },
+		{ "(\\d{1,3})(\\.\\d{1,3}){0,3}", "10.0.0.1" },
+		{ "[\\w.-]+@([\\w-]+)\\.(com|org|net)", "john.doe@example.com" }
+	};
+	
+	private static final String EXTRA_CHARS = "aAbcdxyz0129 ,.-/:[]<>$\t";
+	private static final int MUTATIONS = 3000;
+	
+	@Test
+	public void testSameMatchesAsPattern() {
+		Random random = new Random(1);
+		MatchEngine engine = new LinearMatchEngine();
+		for (String[] pattern : PATTERNS) {
+			Pattern expected = Pattern.compile(pattern[0]);
+			LineMatcher matcher = engine.compile(pattern[0]).createMatcher();
+			assertNotNull("The sample line must match " + pattern[0], matcher.match(pattern[1]));
+			for (String line : createLines(pattern[1], random)) {
+				assertSameMatch(pattern[0], line, expected.matcher(line), matcher.match(line));
+			}
+		}
+	}
+	
+	@Test
+	public void testMultiPatternMatching() {
+		Random random = new Random(2);
+		List<String> regexes = new ArrayList<String>();
+		List<Pattern> expected = new ArrayList<Pattern>();
+		List<String> lines = new ArrayList<String>();
+		for (String[] pattern : PATTERNS) {
+			regexes.add(pattern[0]);
+			expected.add(Pattern.compile(pattern[0]));
+			lines.addAll(createLines(pattern[1], random));
+		}
+		
+		MultiPatternMatcher matcher = new MultiPatternMatcher(regexes);
+		MultiPatternMatcher.State state = matcher.createState();
+		for (String line : lines) {
+			// the first pattern (in list order) that matches the entire line
+			int expression = -1;
+			Matcher expectedMatcher = null;
+			for (int i = 0; (i < expected.size()) && (expression < 0); i++) {
+				expectedMatcher = expected.get(i).matcher(line);
+				if (expectedMatcher.matches()) {
+					expression = i;
+				}
+			}
+			
+			assertEquals("Expression of '" + line + "'", expression, matcher.match(line, state));
+			if (expression >= 0) {
+				assertSameMatch(regexes.get(expression), line, expectedMatcher, state.getMatchResult());
+			}
+		}
+	}
+	
+	@Test
+	public void testUnsupportedConstructs() {
+		String[] regexes = {
+			"(a)\\1",
+			"(?=a)a",
+			"(?!a)b",
+			"(?<=a)b",
+			"(?<!a)b",
+			"a*+",
+			"(?i)a",
+			"(?>a)",
+			"((a)|b)+",
+			"(?:-(\\d))*",
+			"(b?)+"
+		};
+		MatchEngine engine = new LinearMatchEngine();
+		for (String regex : regexes) {
+			try {
+				engine.compile(regex);
+				fail("The pattern " + regex + " must be rejected");
+			} catch (UnsupportedRegexException e) {
+				// expected
+			}
+		}
+	}
+	
+	@Test
+	public void testUnsupportedEntityIsNotMapped() throws Exception {
+		FF2J ff2j = new FF2J()
+			.setMatchEngine(new LinearMatchEngine())
+			.map(BackReference.class);
+		
+		LineMapper lineMapper = ff2j.createLineMapper();
+		assertNull(lineMapper.map("abab"));
+		try {
+			lineMapper.populate(BackReference.class, "abab", Pattern.compile(BackReference.PATTERN).matcher("abab"));
+			fail("The entity must not be mapped");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedMappedEntity() {
+		FF2J ff2j = new FF2J().map(BackReference.class);
+		assertNotNull(ff2j.createLineMapper());
+		
+		ff2j.setMatchEngine(new LinearMatchEngine());
+	}
+	
+	private static void assertSameMatch(String regex, String line, Matcher expected, MatchResult actual) {
+		String message = "'" + line + "' with " + regex;
+		if (!expected.matches()) {
+			assertNull(message, actual);
+			return;
+		}
+		
+		assertNotNull(message, actual);
+		assertEquals(message, expected.groupCount(), actual.groupCount());
+		for (int group = 0; group <= expected.groupCount(); group++) {
+			assertEquals(message + ", start of group " + group, expected.start(group), actual.start(group));
+			assertEquals(message + ", end of group " + group, expected.end(group), actual.end(group));
+		}
+	}
+	
+	/**
+	 * Returns the line and random mutations of the line: inserted, deleted, replaced or repeated characters
+	 * and truncations.
+	 */
+	private static List<String> createLines(String line, Random random) {
+		String chars = line + EXTRA_CHARS;
+		List<String> lines = new ArrayList<String>(Arrays.asList(line, "", line + line));
+		for (int i = 0; i < MUTATIONS; i++) {
+			StringBuilder mutation = new StringBuilder(line);
+			int changes = 1 + random.nextInt(3);
+			for (int j = 0; j < changes; j++) {
+				int position = random.nextInt(mutation.length() + 1);
+				char c = chars.charAt(random.nextInt(chars.length()));
+				switch (random.nextInt(5)) {
+				case 0:
+					mutation.insert(position, c);
+					break;
+				case 1:
+					if (position < mutation.length()) {
+						mutation.deleteCharAt(position);
+					}
+					break;
+				case 2:
+					if (position < mutation.length()) {
+						mutation.setCharAt(position, c);
+					}
+					break;
+				case 3:
+					int end = Math.min(mutation.length(), position + random.nextInt(4));
+					mutation.insert(position, mutation.substring(position, end));
+					break;
+				default:
+					mutation.setLength(position);
+				}
+			}
+			lines.add(mutation.toString());
+		}
+		
+		return lines;
+	}
+	
+	@RegexEntity
+	public static class BackReference {
+
+		public static final String PATTERN = "(\\w+)\\1";
+		
+		@RegexField(group = 1)
+		private String word;
+	
+	}
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2013 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.ff2j;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compares byte for byte the content inflated by {@link ParallelGzipInputStream} with the content inflated
+ * by {@link GZIPInputStream}, for the member layouts that the cutting in ranges must handle. The data is
+ * larger than a few ranges ({@link ParallelGzipInputStream#CHUNK_SIZE}).
+ * 
+ * @author Decebal Suiu
+ */
+public class ParallelGzipInputStreamTest {
+
+	private static final int DATA_LENGTH = 6 * 1024 * 1024;
+	private static final int[] PARALLELISMS = { 1, 4 };
+	
+	/** A member header (no flags) that appears in the uncompressed data of the stored blocks */
+	private static final byte[] FAKE_HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 3, 0 };
+	
+	private static byte[] data;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@BeforeClass
+	public static void setUpClass() {
+		data = createData(new Random(1));
+	}
+	
+	@Test
+	public void testSingleMember() throws Exception {
+		assertSameContent(gzip(data, 0, data.length, Deflater.DEFAULT_COMPRESSION));
+	}
+	
+	@Test
+	public void testConcatenatedMembers() throws Exception {
+		Random random = new Random(2);
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		int position = 0;
+		while (position < data.length) {
+			// mostly members smaller than a range, sometimes a member larger than a range
+			int maxLength = (random.nextInt(10) == 0) ? 4 * ParallelGzipInputStream.CHUNK_SIZE : 600 * 1024;
+			int length = Math.min(data.length - position, 1 + random.nextInt(maxLength));
+			file.write(gzip(data, position, length, Deflater.DEFAULT_COMPRESSION));
+			position += length;
+		}
+		
+		assertSameContent(file.toByteArray());
+	}
+	
+	@Test
+	public void testBgzf() throws Exception {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		for (int position = 0; position < data.length; position += 65280) {
+			file.write(bgzfBlock(data, position, Math.min(65280, data.length - position)));
+		}
+		// the end of file marker
+		file.write(bgzfBlock(data, 0, 0));
+		
+		assertSameContent(file.toByteArray());
+	}
+	
+	@Test
+	public void testFakeHeadersInSingleMember() throws Exception {
+		byte[] fakeData = createFakeHeadersData();
+		
+		assertSameContent(gzip(fakeData, 0, fakeData.length, Deflater.NO_COMPRESSION));
+	}
+	
+	@Test
+	public void testFakeHeadersInConcatenatedMembers() throws Exception {
+		byte[] fakeData = createFakeHeadersData();
+		Random random = new Random(3);
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		int position = 0;
+		while (position < fakeData.length) {
+			int length = Math.min(fakeData.length - position, 1 + random.nextInt(3 * ParallelGzipInputStream.CHUNK_SIZE));
+			file.write(gzip(fakeData, position, length, Deflater.NO_COMPRESSION));
+			position += length;
+		}
+		
+		assertSameContent(file.toByteArray());
+	}
+	
+	@Test
+	public void testTrailingGarbage() throws Exception {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		int half = data.length / 2;
+		file.write(gzip(data, 0, half, Deflater.DEFAULT_COMPRESSION));
+		file.write(gzip(data, half, data.length - half, Deflater.DEFAULT_COMPRESSION));
+		file.write(new byte[1000]);
+		
+		assertSameContent(file.toByteArray());
+	}
+	
+	@Test
+	public void testCorruptMember() throws Exception {
+		byte[] file = gzip(data, 0, data.length, Deflater.DEFAULT_COMPRESSION);
+		file[file.length / 2] ^= 0x55;
+		Path path = write(file);
+		for (int parallelism : PARALLELISMS) {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+					ParallelGzipInputStream input = new ParallelGzipInputStream(channel, parallelism)) {
+				readAll(input);
+				fail("The corrupt member must be reported (parallelism " + parallelism + ")");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+	
+	private void assertSameContent(byte[] file) throws IOException {
+		byte[] expected = readAll(new GZIPInputStream(new ByteArrayInputStream(file)));
+		Path path = write(file);
+		for (int parallelism : PARALLELISMS) {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+					ParallelGzipInputStream input = new ParallelGzipInputStream(channel, parallelism)) {
+				assertArrayEquals("Parallelism " + parallelism, expected, readAll(input));
+			}
+		}
+	}
+	
+	private Path write(byte[] file) throws IOException {
+		Path path = folder.newFile().toPath();
+		Files.write(path, file);
+		
+		return path;
+	}
+	
+	private static byte[] readAll(InputStream input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = input.read(buffer)) != -1) {
+			output.write(buffer, 0, count);
+		}
+		
+		return output.toByteArray();
+	}
+	
+	/**
+	 * Returns log lines with random values, compressed to about a quarter of their length.
+	 */
+	private static byte[] createData(Random random) {
+		StringBuilder text = new StringBuilder(DATA_LENGTH + 200);
+		while (text.length() < DATA_LENGTH) {
+			text.append("[webapp 2013/06/13 21:").append(random.nextInt(60)).append(':').append(random.nextInt(60))
+				.append("] - <$> 10.0.").append(random.nextInt(256)).append('.').append(random.nextInt(256))
+				.append(", /download/").append(Long.toHexString(random.nextLong())).append(".zip\n");
+		}
+		text.setLength(DATA_LENGTH);
+		
+		return text.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+	
+	/**
+	 * Returns the data with member headers written in it, so that they end up (uncompressed) in the stored
+	 * blocks, on both sides of the range boundaries.
+	 */
+	private static byte[] createFakeHeadersData() {
+		byte[] fakeData = data.clone();
+		for (int i = 700000; i < fakeData.length - FAKE_HEADER.length; i += 900000) {
+			System.arraycopy(FAKE_HEADER, 0, fakeData, i, FAKE_HEADER.length);
+		}
+		
+		return fakeData;
+	}
+	
+	private static byte[] gzip(byte[] data, int offset, int length, final int level) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzipOutput = new GZIPOutputStream(output) {
+			
+			{
+				def.setLevel(level);
+			}
+		
+		}) {
+			gzipOutput.write(data, offset, length);
+		}
+		
+		return output.toByteArray();
+	}
+	
+	/**
+	 * Returns a BGZF block: a member with the block size in the BC extra subfield.
+	 */
+	private static byte[] bgzfBlock(byte[] data, int offset, int length) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(data, offset, length);
+		deflater.finish();
+		byte[] compressed = new byte[length + 1024];
+		int compressedLength = deflater.deflate(compressed);
+		deflater.end();
+		
+		CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		int blockSize = 18 + compressedLength + 8 - 1;
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+		block.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+				(byte) blockSize, (byte) (blockSize >> 8) }, 0, 18);
+		block.write(compressed, 0, compressedLength);
+		writeInt(block, (int) crc.getValue());
+		writeInt(block, length);
+		
+		return block.toByteArray();
+	}
+	
+	private static void writeInt(ByteArrayOutputStream output, int value) {
+		for (int i = 0; i < 4; i++) {
+			output.write(value >> (8 * i));
+		}
+	}
+
+}